@@ -0,0 +1,92 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.world.Level;
+import core.world.RandomLevel;
+
+/**
+ * <p>Times level generation and painting tiles into a chunk.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelBenchmark {
+    /** Level height in tiles. */
+    private static final int ROWS = 15;
+
+    /** Level width in tiles. */
+    @Param({"150", "1000", "10000" })
+    private int cols;
+
+    /** A generated level to paint. */
+    private Level level;
+    /** One chunk's worth of pixels. */
+    private PixelBuffer chunk;
+
+    /**
+     * Generate a level with textures to paint.
+     */
+    @Setup
+    public void setUp() {
+        level = RandomLevel.genWorldRandom(cols, ROWS, 
+                                           new TexturePack("/images/"));
+        chunk = new PixelBuffer(Renderer.CHUNK_SIZE, Renderer.CHUNK_SIZE);
+    }
+
+    /**
+     * Paint the tiles of the middle chunk.
+     * @return the chunk, so the work isn't optimized away.
+     */
+    @Benchmark
+    public PixelBuffer paintTiles() {
+        int x = (cols / 2 / Renderer.CHUNK_TILES) * Renderer.CHUNK_SIZE;
+        level.paintTiles(chunk, x, 0, level.getBounds());
+        return chunk;
+    }
+
+    /**
+     * Generate a random-block level.
+     * @return the level
+     */
+    @Benchmark
+    public Level genWorldRandom() {
+        return RandomLevel.genWorldRandom(cols, ROWS, null);
+    }
+
+    /**
+     * Generate a hilly level.
+     * @return the level
+     */
+    @Benchmark
+    public Level genWorldHills() {
+        return RandomLevel.genWorldHills(cols, ROWS, null);
+    }
+
+    /**
+     * Generate a platform level.
+     * @return the level
+     */
+    @Benchmark
+    public Level genWorldPlatform() {
+        return RandomLevel.genWorldPlatform(cols, ROWS, null);
+    }
+}
@@ -0,0 +1,77 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.props.Glow;
+import core.props.Light;
+import core.world.Level;
+
+/**
+ * <p>Times making a light and building the glow of one.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LightBenchmark {
+    /** Width and height of the level, in tiles. */
+    private static final int SIZE = 10;
+    /** Red part of the glow color. */
+    private static final double RED = 0.8235;
+    /** Green part of the glow color. */
+    private static final double GREEN = 0.7059;
+    /** Blue part of the glow color. */
+    private static final double BLUE = 0.5098;
+
+    /** Light radius in pixels. */
+    @Param({"75", "175" })
+    private short radius;
+
+    /** The level lights are made in. */
+    private Level level;
+
+    /**
+     * Make an empty level to put lights in.
+     */
+    @Setup
+    public void setUp() {
+        level = new Level(SIZE, SIZE, null);
+    }
+
+    /**
+     * Build a glow from scratch, skipping the cache.
+     * @return the glow, so the work isn't optimized away.
+     */
+    @Benchmark
+    public PixelBuffer buildGlow() {
+        return Glow.build(radius, RED, GREEN, BLUE);
+    }
+
+    /**
+     * Make a light and size it, as level start up does for each one.
+     * @return the light, so the work isn't optimized away.
+     */
+    @Benchmark
+    public Light create() {
+        Light made = new Light(SIZE, SIZE, level);
+        made.setRadius(radius);
+        return made;
+    }
+}
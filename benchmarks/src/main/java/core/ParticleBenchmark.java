@@ -0,0 +1,143 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.effects.Emitter;
+import core.effects.Particles;
+import core.world.Level;
+
+/**
+ * <p>Times moving, capturing and drawing a full pool of particles, a
+ * frame's worth at a time, and running the game's effects.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParticleBenchmark {
+    /** Screen size used for drawing. */
+    private static final int SCREEN = 450;
+    /** Seconds in a frame. */
+    private static final double FRAME = 1 / 60.0;
+    /** Long enough that no particle dies while being timed. */
+    private static final double FOREVER = 1e9;
+    /** How fast the particles are thrown, in pixels per second. */
+    private static final double SPEED = 1;
+    /** Fire hoses spraying at once in the effects benchmark. */
+    private static final int HOSES = 16;
+
+    /** Particles in the pool. */
+    @Param({"10000", "50000" })
+    private int count;
+
+    /** The pool under test. */
+    private Particles pool;
+    /** The renderer that draws them. */
+    private Renderer renderer;
+    /** The visible region of the level. */
+    private Rectangle view;
+    /** Where the particles are, for drawing. */
+    private Snapshot snap;
+    /** The pool the game's effects spawn into. */
+    private Particles effects;
+    /** A fire hose, as the hero sprays. */
+    private Emitter hose;
+    /** A pollen puff, as the hero lands. */
+    private Emitter pollen;
+
+    /**
+     * Fill the pool with slow particles in the middle of the screen,
+     * and draw a frame so the renderer has a screen.
+     */
+    @Setup
+    public void setUp() {
+        TexturePack tp = new TexturePack("/images/");
+        Emitter fill = new Emitter(Texture.spark, count, SPEED,
+                                   2 * Math.PI, FOREVER, 0);
+        Canvas comp = new Canvas();
+        Graphics page = new BufferedImage(SCREEN, SCREEN,
+                BufferedImage.TYPE_INT_ARGB).getGraphics();
+
+        pool = new Particles(count);
+        fill.setJitter(1);
+        fill.emit(pool, SCREEN / 2, SCREEN / 2);
+
+        renderer = new Renderer();
+        renderer.setWorld(new Level(SCREEN / Level.CELL_SIZE,
+                                    SCREEN / Level.CELL_SIZE, tp));
+        renderer.setAtlas(tp.getAtlas());
+        renderer.setParticles(pool);
+        comp.setSize(SCREEN, SCREEN);
+        view = new Rectangle(0, 0, SCREEN, SCREEN);
+        renderer.draw(page, comp, view.x, view.y);
+        snap = new Snapshot();
+        snap.viewW = SCREEN;
+        snap.viewH = SCREEN;
+        renderer.capture(snap, 1.0);
+
+        effects = new Particles(count);
+        hose = Emitter.fireHose(Math.PI / 4);
+        pollen = Emitter.pollen();
+    }
+
+    /**
+     * Move every particle on by one frame.
+     */
+    @Benchmark
+    public void update() {
+        pool.update(FRAME);
+    }
+
+    /**
+     * Copy every particle into a snapshot, as each frame does.
+     */
+    @Benchmark
+    public void capture() {
+        renderer.capture(snap, 1.0);
+    }
+
+    /**
+     * Run a frame of effects: several fire hoses spraying and a pollen
+     * puff, then move everything on.  The pool settles at how many
+     * particles those keep alive.
+     * @return the live particle count, so the work isn't optimized away.
+     */
+    @Benchmark
+    public int effects() {
+        for (int i = 0; i < HOSES; i++) {
+            hose.stream(effects, SCREEN / 2, SCREEN / 2, FRAME);
+        }
+        pollen.emit(effects, SCREEN / 2, SCREEN / 2);
+        effects.update(FRAME);
+        return effects.size();
+    }
+
+    /**
+     * Blend every particle over the screen.
+     */
+    @Benchmark
+    public void draw() {
+        renderer.drawParticles(snap, view);
+    }
+}
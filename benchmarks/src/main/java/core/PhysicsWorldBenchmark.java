@@ -0,0 +1,111 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.creatures.Hero;
+import core.world.Level;
+import core.world.RandomLevel;
+
+/**
+ * <p>Times one physics step of many bodies running around a wide
+ * level.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PhysicsWorldBenchmark {
+    /** Length of one physics step (120 Hz). */
+    private static final long STEP = 1000000000L / 120;
+    /** Level width in tiles. */
+    private static final int COLS = 1000;
+    /** Level height in tiles. */
+    private static final int ROWS = 15;
+    /** Size of each body. */
+    private static final int SIZE = 30;
+    /** Sideways push on each body. */
+    private static final double PUSH = 1000;
+
+    /** Number of bodies. */
+    @Param({"100", "1000", "5000" })
+    private int bodies;
+    /** Whether to split the step across cores. */
+    @Param({"true", "false" })
+    private boolean parallel;
+
+    /** The world under test. */
+    private PhysicsWorld physics;
+    /** Direction each body is pushed in. */
+    private double[] push;
+    /** Bodies found by the overlap test. */
+    private ArrayList<Dynamic> found = new ArrayList<Dynamic>();
+
+    /**
+     * Scatter the bodies over a hilly level.
+     */
+    @Setup
+    public void setUp() {
+        Random gen = new Random(1);
+        Level level = RandomLevel.genWorldHills(COLS, ROWS, null);
+        Hero body;
+        physics = new PhysicsWorld(level);
+        physics.setGravity(0, -1200);
+        physics.setParallel(parallel);
+        push = new double[bodies];
+        for (int i = 0; i < bodies; i++) {
+            body = new Hero();
+            body.setSize(SIZE, SIZE);
+            body.setPos(gen.nextInt(COLS * Level.CELL_SIZE),
+                        (ROWS - 2) * Level.CELL_SIZE);
+            physics.add(body);
+            push[i] = gen.nextBoolean() ? PUSH : -PUSH;
+        }
+    }
+
+    /**
+     * Push every body sideways and step the world.
+     * @return the world, so the work isn't optimized away.
+     */
+    @Benchmark
+    public PhysicsWorld step() {
+        for (int i = 0; i < bodies; i++) {
+            physics.addForce(i, push[i], 0);
+        }
+        physics.step(STEP);
+        return physics;
+    }
+
+    /**
+     * Find every pair of touching bodies, through the grid.
+     * @return the number of overlaps found.
+     */
+    @Benchmark
+    public int overlaps() {
+        int pairs = 0;
+        for (int i = 0; i < bodies; i++) {
+            found.clear();
+            physics.getOverlapping(i, found);
+            pairs += found.size();
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,155 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.creatures.Hero;
+import core.world.Level;
+import core.world.RandomLevel;
+
+/**
+ * <p>Times the renderer's compositing and drawing on a hilly level with
+ * every light switched on.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RendererBenchmark {
+    /** Screen size used for drawing. */
+    private static final int SCREEN = 450;
+    /** Level height in tiles. */
+    private static final int ROWS = 15;
+    /** Sprites blended per blitSprites call. */
+    private static final int SPRITES = 256;
+
+    /** Level width in tiles. */
+    @Param({"150", "1000" })
+    private int cols;
+
+    /** The renderer under test. */
+    private Renderer renderer;
+    /** The hero, drawn as a dynamic prop. */
+    private Hero hero;
+    /** The component used for sizing. */
+    private Canvas comp;
+    /** Where drawing ends up. */
+    private Graphics page;
+    /** The visible region of the level. */
+    private Rectangle view;
+    /** The tile of one light, for partial recomposites. */
+    private Rectangle lightTile;
+    /** The hero's sprite in the atlas. */
+    private Rectangle sprite;
+    /** The sheet sprites are blended from. */
+    private PixelBuffer sheet;
+
+    /**
+     * Build a lit level and draw it once so the chunks are cached.
+     */
+    @Setup
+    public void setUp() {
+        TexturePack tp = new TexturePack("/images/");
+        Level level = RandomLevel.genWorldHills(cols, ROWS, tp);
+        hero = new Hero();
+        hero.setSprite(tp.getSprite(Texture.hero));
+        Simulation sim = new Simulation(level, hero);
+        Rectangle area;
+
+        renderer = new Renderer();
+        renderer.setWorld(level);
+        renderer.setAtlas(tp.getAtlas());
+        sprite = tp.getAtlas().getRegion(Texture.hero);
+        sheet = tp.getAtlas().getSheet();
+        renderer.addDynProp(hero);
+        //look at the hero; recomposite a light on screen if there is one
+        view = new Rectangle(hero.getPos().x - SCREEN / 2, 0, 
+                             SCREEN, SCREEN);
+        lightTile = view;
+        for (Trigger trigger : sim.getTriggers()) {
+            trigger.triggerAction();
+            renderer.addLight((Drawable) trigger);
+            area = trigger.getTriggerArea(new Rectangle());
+            if (view.contains(area.getLocation())) {
+                lightTile = new Rectangle(
+                        area.x - area.x % Level.CELL_SIZE,
+                        area.y - area.y % Level.CELL_SIZE,
+                        Level.CELL_SIZE, Level.CELL_SIZE);
+            }
+        }
+
+        comp = new Canvas();
+        comp.setSize(SCREEN, SCREEN);
+        page = new BufferedImage(SCREEN, SCREEN,
+                BufferedImage.TYPE_INT_ARGB).getGraphics();
+        renderer.draw(page, comp, view.x, view.y);
+    }
+
+    /**
+     * Recomposite everything the screen needs from scratch.
+     */
+    @Benchmark
+    public void fullRecomposite() {
+        renderer.invalidate();
+        renderer.update(view);
+    }
+
+    /**
+     * Recomposite the tile of one light, as when it toggles.
+     */
+    @Benchmark
+    public void lightRecomposite() {
+        renderer.invalidate(lightTile);
+        renderer.update(view);
+    }
+
+    /**
+     * Blend the hero over the screen.
+     */
+    @Benchmark
+    public void mergeDynProp() {
+        renderer.mergeDynProp(hero, view.x, view.y, 1.0);
+    }
+
+    /**
+     * Blend the hero's sprite all over the screen, some of them 
+     * hanging off its edges.
+     */
+    @Benchmark
+    public void blitSprites() {
+        for (int i = 0; i < SPRITES; i++) {
+            renderer.blit(sheet, sprite.x, sprite.y, 
+                          sprite.width, sprite.height, 
+                          i * 7 % SCREEN - sprite.width / 2, 
+                          i * 13 % SCREEN - sprite.height / 2, true);
+        }
+    }
+
+    /**
+     * Draw a whole frame from cached chunks.
+     */
+    @Benchmark
+    public void drawFrame() {
+        renderer.draw(page, comp, view.x, view.y);
+    }
+}
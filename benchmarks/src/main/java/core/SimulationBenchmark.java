@@ -0,0 +1,83 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.world.Contact;
+import core.world.Level;
+
+/**
+ * <p>Times the physics step and the world's collision sweep.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SimulationBenchmark {
+    /** Length of one physics step (120 Hz). */
+    private static final long STEP = 1000000000L / 120;
+    /** How far the hero is swept down: a tile and a half. */
+    private static final int DROP = -Level.CELL_SIZE * 3 / 2;
+
+    /** Which level generator to use (see Headless.newSession). */
+    @Param({"0", "1", "2" })
+    private int type;
+
+    /** The simulation under test. */
+    private Simulation sim;
+    /** Scratch for the hero's collision box. */
+    private final Rectangle box = new Rectangle();
+    /** Scratch for the sweep's contact. */
+    private final Contact contact = new Contact();
+
+    /**
+     * Build a session with the hero running right.
+     */
+    @Setup
+    public void setUp() {
+        sim = Headless.newSession(type);
+        sim.setKeyForce(1000, 0);
+    }
+
+    /**
+     * Run one physics step, restarting when the hero falls out.
+     * @return the simulation, so the work isn't optimized away.
+     */
+    @Benchmark
+    public Simulation step() {
+        if (sim.isOver()) {
+            sim.restart();
+        }
+        sim.step(STEP);
+        return sim;
+    }
+
+    /**
+     * Sweep the hero's collision box down against the bricks, as a 
+     * physics step does.
+     * @return true if a brick was hit.
+     */
+    @Benchmark
+    public boolean sweep() {
+        Rectangle r = sim.getHero().getCollisionBox(box);
+        return sim.getWorld().sweep(r.x, r.y, r.width, r.height, 
+                                    0, DROP, Level.SOLID, contact);
+    }
+}
@@ -0,0 +1,92 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Times the conversions between images and pixel buffers.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class UtilBenchmark {
+    /** Width and height of the image, in pixels. */
+    @Param({"30", "480", "1920" })
+    private int size;
+
+    /** A randomly filled source image. */
+    private BufferedImage image;
+    /** An image to convert into. */
+    private BufferedImage target;
+    /** A randomly filled pixel buffer. */
+    private PixelBuffer pixels;
+    /** A single color. */
+    private double[] argb;
+
+    /**
+     * Fill the image and buffer with noise.
+     */
+    @Setup
+    public void setUp() {
+        Random gen = new Random(1);
+        image = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+        target = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        pixels = new PixelBuffer(size, size);
+        int[] data = pixels.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = gen.nextInt();
+            image.setRGB(i % size, i / size, gen.nextInt());
+        }
+        argb = new double[] {1.0, gen.nextDouble(), 
+                             gen.nextDouble(), gen.nextDouble()};
+    }
+
+    /**
+     * Decode an image into a pixel buffer.
+     * @return the buffer, so the work isn't optimized away.
+     */
+    @Benchmark
+    public PixelBuffer imageToPixels() {
+        Util.imageToPixels(image, pixels);
+        return pixels;
+    }
+
+    /**
+     * Copy a pixel buffer into an image.
+     * @return the image, so the work isn't optimized away.
+     */
+    @Benchmark
+    public BufferedImage pixelsToImage() {
+        Util.pixelsToImage(pixels, target);
+        return target;
+    }
+
+    /**
+     * Pack one color.
+     * @return the packed color.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int toIntRGBA() {
+        return Util.toIntRGBA(argb);
+    }
+}
@@ -0,0 +1,116 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Runs a per-row pixel kernel over a region in horizontal bands,
+ * spread over every core.  The region is halved until the bands are
+ * small enough, and small regions are run on the calling thread, so
+ * recompositing one tile costs no more than before.</p>
+ * <p>Kernels must only write to the rows they are given, and must not
+ * change anything shared, such as scratch lists.  Then the result is
+ * the same, bit for bit, however the region is split.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public final class Bands {
+    /** Regions with fewer pixels than this are run on one thread. */
+    public static final int SERIAL_PIXELS = 1 << 15;
+    /** The threads bands are run on, or null to run on the caller. */
+    private static volatile ForkJoinPool pool = new ForkJoinPool();
+
+    /**
+     * Static methods only.
+     */
+    private Bands() {
+    }
+
+    /**
+     * <p>Work done on a band of rows.</p>
+     */
+    public interface Kernel {
+        /**
+         * Process the rows from bottom up to, but not including, top.
+         * @param bottom The first row
+         * @param top The row after the last
+         */
+        void run(int bottom, int top);
+    }
+
+    /**
+     * Choose the threads bands are run on, so tests can compare split 
+     * and unsplit results on any machine.
+     * @param threads The pool to split big regions over, or null to 
+     * run every region on the calling thread.
+     * @return The pool used until now, to put back afterwards.
+     */
+    static ForkJoinPool setPool(ForkJoinPool threads) {
+        ForkJoinPool old = pool;
+        pool = threads;
+        return old;
+    }
+
+    /**
+     * Run a kernel over some rows, in parallel bands if there is enough
+     * work and more than one core.  Returns once every row is done.
+     * @param kernel The work to do
+     * @param bottom The first row
+     * @param top The row after the last
+     * @param width How many pixels wide each row is, to size the work
+     */
+    public static void run(Kernel kernel, int bottom, int top, int width) {
+        ForkJoinPool threads = pool;
+        if ((long) (top - bottom) * width < SERIAL_PIXELS
+                || threads == null || threads.getParallelism() == 1) {
+            kernel.run(bottom, top);
+        } else {
+            threads.invoke(new Band(kernel, bottom, top, width));
+        }
+    }
+
+    /**
+     * <p>A band of rows, split in two until it is small enough.</p>
+     */
+    private static class Band extends RecursiveAction {
+        /** Unique version of this task. */
+        private static final long serialVersionUID = 4521707350298637514L;
+
+        /** The work to do. */
+        private final Kernel kernel;
+        /** The first row. */
+        private final int bottom;
+        /** The row after the last. */
+        private final int top;
+        /** The pixels in each row. */
+        private final int width;
+
+        /**
+         * Constructor.
+         * @param kernel The work to do
+         * @param bottom The first row
+         * @param top The row after the last
+         * @param width The pixels in each row
+         */
+        Band(Kernel kernel, int bottom, int top, int width) {
+            this.kernel = kernel;
+            this.bottom = bottom;
+            this.top = top;
+            this.width = width;
+        }
+
+        @Override
+        protected void compute() {
+            int middle;
+            if ((long) (top - bottom) * width < SERIAL_PIXELS
+                    || top - bottom < 2) {
+                kernel.run(bottom, top);
+                return;
+            }
+            middle = (bottom + top) >>> 1;
+            invokeAll(new Band(kernel, bottom, middle, width),
+                      new Band(kernel, middle, top, width));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>One fixed-size block of the composited backdrop.  The renderer
+ * only keeps the chunks near the camera, so memory depends on the
+ * size of the screen rather than the size of the level.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Chunk {
+    /** The region of the world (in pixels) this chunk covers. */
+    private final Rectangle bounds;
+    /** The composited pixels. 0,0 is bottom left of the chunk. */
+    private final PixelBuffer pixels;
+    /** The composited image. 0,0 is top left of the chunk. */
+    private final BufferedImage image;
+
+    /**
+     * Constructor for an empty chunk covering the given region.
+     * @param region The world pixels this chunk covers.
+     */
+    public Chunk(Rectangle region) {
+        bounds = new Rectangle(region);
+        pixels = new PixelBuffer(region.width, region.height);
+        image = new BufferedImage(region.width, region.height,
+                                  BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Get the region of the world covered by this chunk.
+     * @return The chunk's bounds in world pixels.
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Get the composited pixels of this chunk.
+     * @return A handle to the chunk's pixel buffer.
+     */
+    public PixelBuffer getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Get the image to draw for this chunk.
+     * @return A handle to the chunk's image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Transfer part of the pixel buffer to the image.
+     * @param region The region to update, in world pixels.
+     */
+    public void updateImage(Rectangle region) {
+        Rectangle local = new Rectangle(region);
+        local.translate(-bounds.x, -bounds.y);
+        Util.pixelsToImage(pixels, image, local);
+    }
+}
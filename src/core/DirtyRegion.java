@@ -0,0 +1,68 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * <p>Collects the regions of the background that need recompositing.
+ * Overlapping rectangles are merged as they are added, so a pixel is
+ * never composited twice in one flush.</p>
+ * <p>Regions may be added from the game thread while the renderer
+ * drains them during painting, so access is synchronized.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class DirtyRegion {
+    /** The pending, non-overlapping dirty rectangles. */
+    private ArrayList<Rectangle> regions = new ArrayList<Rectangle>();
+
+    /**
+     * Mark a region as dirty, merging it with any pending regions
+     * it overlaps.
+     * @param r The region that needs to be redrawn.
+     */
+    public synchronized void add(Rectangle r) {
+        if (r.isEmpty()) {
+            return;
+        }
+        Rectangle merged = new Rectangle(r);
+        boolean grew = true;
+        //merging can make the union overlap others, so repeat until stable
+        while (grew) {
+            grew = false;
+            for (int i = regions.size() - 1; i >= 0; i--) {
+                if (regions.get(i).intersects(merged)) {
+                    merged.add(regions.remove(i));
+                    grew = true;
+                }
+            }
+        }
+        regions.add(merged);
+    }
+
+    /**
+     * Check if anything needs redrawing.
+     * @return true if no regions are pending.
+     */
+    public synchronized boolean isEmpty() {
+        return regions.isEmpty();
+    }
+
+    /**
+     * Discard all pending regions.
+     */
+    public synchronized void clear() {
+        regions.clear();
+    }
+
+    /**
+     * Take all the pending regions, leaving this set empty.
+     * @return The dirty rectangles, none of which overlap.
+     */
+    public synchronized ArrayList<Rectangle> drain() {
+        ArrayList<Rectangle> result = regions;
+        regions = new ArrayList<Rectangle>();
+        return result;
+    }
+}
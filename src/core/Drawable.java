@@ -1,6 +1,7 @@
 /** Joe Pelz, Set A, A00893517 */
 package core;
 
+import java.awt.Image;
 import java.awt.Rectangle;
 
 /**
@@ -10,13 +11,19 @@ import java.awt.Rectangle;
  */
 public interface Drawable {
     /**
-     * Get a 2D array of unaltered pixels (double[4]) 
+     * Get a buffer of unaltered packed ARGB pixels 
      * for drawing to the screen.  This function 
      * should not do calculations, but merely return a handle
-     * to a pre-calculated array.
-     * @return The pixel array (double[width][height][channel])
+     * to a pre-calculated buffer.
+     * @return The pixel buffer (0,0 is the bottom left)
      */
-    double[][][] getPixels();
+    PixelBuffer getPixels();
+    /**
+     * Get the image the drawable was given, so that, if it came from 
+     * a TexturePack, it can be drawn from the pack's sprite atlas.
+     * @return The image, or null to draw getPixels() instead.
+     */
+    Image getImage();
     /**
      * Get the abgr pixels of the entity. 
      * @return A byte array of {a,b,g,r,a,b,g,r...}. 
@@ -30,6 +37,14 @@ public interface Drawable {
      * @return A Rectangle storing the drawable's bounding box.
      */
     Rectangle getBounds();
+    /**
+     * Get the bounds of the Drawable part way between the previous 
+     * simulation step and the current one, for smooth drawing.
+     * Things that don't move can just return getBounds().
+     * @param alpha 0 for the previous step, 1 for the current step.
+     * @return A Rectangle storing the drawable's bounding box.
+     */
+    Rectangle getDrawBounds(double alpha);
     /**
      * Get a short that represents how to combine this drawable array. 
      * Add, or Merge so far.
@@ -1,49 +1,50 @@
 /** Joe Pelz, Set A, A00893517 */
 package core;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 
 /**
- * <p>This interface enforces an object meets all the requirements 
+ * <p>This interface enforces an object meets all the requirements
  * for physics simulations.</p>
+ * <p>A PhysicsWorld keeps the motion of each body (velocity, forces,
+ * sub-pixel remainder) itself; the object describes its shape and
+ * drag, and is moved and told about the ground as the world steps.</p>
  * @author Joe Pelz, Set A, A00893517
  * @version 1.0
  */
 public interface Dynamic {
     /**
-     * Apply forces to the object's velocity.
-     * @param seconds delta time (amount of time that has elapsed)
+     * Get the object's position.
+     * @return A handle to the object's position, in pixels.
      */
-    void applyForces(double seconds);
+    Point getPos();
     /**
-     * Add a force to the object.
-     * @param force The force to push the object with. (400 is reasonable)
+     * Get the collision box of the object, without allocating.
+     * @param rv The rectangle to store the collision box in.
+     * @return rv, holding the object's collision rectangle
      */
-    void addForce(Vector2D force);
+    Rectangle getCollisionBox(Rectangle rv);
     /**
-     * Get the object's velocity.
-     * @return A vector of the object's velocity.
+     * Get how quickly the object slows down. Read once, when the object
+     * is added to a PhysicsWorld.
+     * @return The fraction of velocity lost per second, in x and y.
      */
-    Vector2D getVel();
+    Vector2D getDrag();
     /**
-     * Set the object's velocity.
-     * @param vel The replacement velocity for this object.
+     * Remember the current position as the previous step's position.
+     * Called at the start of each physics step.
      */
-    void setVel(Vector2D vel);
-    /**
-     * Apply drag to the object's velocity.
-     * @param seconds delta time (amount of time that has elapsed)
-     */
-    void applyDrag(double seconds);
-    /**
-     * Get the collision box the given object.
-     * @return the object's collision rectangle
-     */
-    Rectangle getCollisionBox();
+    void savePos();
     /**
      * Directly move the object by an amount.
      * @param x How much to move in the x direction.
      * @param y How much to move in the y direction.
      */
     void move(int x, int y);
+    /**
+     * Tell the object whether it is resting on something.
+     * @param onGround true if the object is on the ground.
+     */
+    void setOnGround(boolean onGround);
 }
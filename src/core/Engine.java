@@ -1,29 +1,52 @@
 /** Joe Pelz, Set A, A00893517 */
 package core;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
+import java.awt.image.BufferStrategy;
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JPanel;
 
 import core.creatures.Hero;
-import core.effects.Burst;
+import core.effects.Emitter;
+import core.effects.Particles;
 import core.props.Light;
 import core.world.Level;
+import core.world.LevelFile;
 import core.world.RandomLevel;
-import core.world.World;
 
 /**
  * 
  * <p>This class does the primary computation in making this 
  * side-scrolling world visible and interactive. </p>
+ * <p>The game rules themselves live in Simulation; this panel runs 
+ * the loop, feeds it keyboard input and draws the results.</p>
+ * <p>By default frames are drawn by asking Swing to repaint the panel,
+ * which it does when it gets round to it.  With active rendering, a 
+ * render thread of our own draws each frame onto a Canvas as soon as 
+ * the loop has simulated it, and flips it onto the screen.</p>
+ * <p>Either way, the loop hands each frame over as a Snapshot, and 
+ * key presses come back as requests the loop applies before its next 
+ * steps, so the simulation is only ever touched by the loop.</p>
+ * <p>The loop and the drawing form a two stage pipeline: while one 
+ * frame is drawn, the loop simulates the next.  By default only the 
+ * newest frame is drawn, for the lowest latency.  With a pipeline 
+ * depth, every frame is drawn, and the loop may run that many frames 
+ * ahead of the drawing before it waits.</p>
  * @author Joe Pelz, Set A, A00893517
  * @version 1.0
  */
@@ -36,66 +59,122 @@ public class Engine extends JPanel implements Runnable {
     /** Preferred panel height. */
     private static final int HEIGHT = 450;
     /** The FPS to start at. */
-    private static final int INIT_FPS = 24;
-    /** Milliseconds per second. */
-    private static final int MS_PER_S = 1000;
+    private static final int INIT_FPS = 60;
+    /** Physics steps per second to start at. */
+    private static final int INIT_TICK_RATE = 120;
     /** Nanoseconds per second. */
     private static final long NS_PER_S = 1000000000L;
     /** Nanoseconds per millisecond. */
     private static final int NS_PER_MS = 1000000;
     /** Longest allowable time passage between frames. */
     private static final int MAX_FRAME = 50000000;
+    /** How close to a frame deadline to stop sleeping and just yield. */
+    private static final int SPIN_WINDOW = 2000000;
+    /** The most particles alive at once. */
+    private static final int MAX_PARTICLES = 1 << 15;
+    /** Buffers to flip between when rendering actively. */
+    private static final int PAGES = 2;
     
     /** Score offset distance in pixels. (x direction) */
     private static final int SCORE_PLACE_X = 20;
     /** Score offset distance in pixels. (y direction) */
     private static final int SCORE_PLACE_Y = 20;
     
-    /** gravitational force. */
-    private static final double GRAVITY = -1200;
     /** Hero movement force. */
     private static final double SPEED = 1000;
-    /** Hero jumping speed. */
-    private static final double JUMP  = 600;
+    /** How far above level the fire hose points, in radians. */
+    private static final double HOSE_ANGLE = Math.PI / 4;
     /** World movement speed in pixels per click. */
     private static final int SCROLL_SPEED = 5;
-    /** How far you can fall before game over. */
-    private static final int LOWER_BOUND = -100;
     
     
     /** The thread that runs the main loop and animates the worm. */
     private Thread thread;
+    /** Where frames are drawn when rendering actively, else null. */
+    private volatile Canvas canvas;
+    /** Guards framesReady, and is notified when it changes. */
+    private final Object frameLock = new Object();
+    /** How many frames the loop has simulated for the render thread. */
+    private long framesReady;
+    /** Turns key presses into forces. */
+    private Controller controller = new Controller();
     /** Boolean variable to control whether the main loop is running. */
-    private boolean running;
+    private volatile boolean running;
     /** frame counter. */
     private int frame;
-    /** How many milliseconds between frames. */
-    private static final long targetTime = MS_PER_S / INIT_FPS;
+    /** How many nanoseconds between frames. */
+    private volatile long frameLength = NS_PER_S / INIT_FPS;
+    /** How many nanoseconds each physics step simulates. */
+    private volatile long tickLength = NS_PER_S / INIT_TICK_RATE;
+    /** Hands each frame from the main loop to whoever draws it. */
+    private volatile SnapshotChannel snapshots = new SnapshotBuffer();
+    /** How many frames the loop may get ahead of the drawing, or 0 
+     * for the loop never to wait and only the newest to be drawn. */
+    private volatile int pipelineDepth;
+    /** The snapshot last drawn.  Only for the drawing thread. */
+    private Snapshot shown;
+    /** Scratch rectangle for the hero's bounds. */
+    private final Rectangle heroBounds = new Rectangle();
+    /** The force the keys push the hero with, to the right. */
+    private volatile double keyX;
+    /** The force the keys push the hero with, upwards. */
+    private volatile double keyY;
+    /** Camera scrolling asked for since the last frame, to the right. */
+    private final AtomicInteger scrollX = new AtomicInteger();
+    /** Camera scrolling asked for since the last frame, upwards. */
+    private final AtomicInteger scrollY = new AtomicInteger();
+    /** Whether a jump was asked for since the last frame. */
+    private final AtomicBoolean jumped = new AtomicBoolean();
+    /** Whether the fire hose key is down. */
+    private volatile boolean hosing;
+    /** Whether to draw the stage timings over the game. */
+    private volatile boolean showProfiler;
     
     /** The rendering engine. */
     private Renderer renderer = new Renderer();
+    /** The game rules and state. */
+    private Simulation sim;
     /** The actual world to explore. */
     private Level world;
-    /** The camera's x position. */
-    private int offX;
-    /** The camera's y position. */
-    private int offY;
-    /** The forces applied by key presses. */
-    private Vector2D keyForce = new Vector2D(0.0, 0.0);
     /** The hero of this adventure. */
     private Hero hero;
     /** The set of textures to use. */
     private TexturePack tp = new TexturePack("/images/");
-    /** The special effects used. */
-    private ArrayList<Entity> effects = new ArrayList<Entity>();
-    /** The triggerable events in use. */
-    private ArrayList<Trigger> triggers = new ArrayList<Trigger>();
+    /** The particles of every special effect. */
+    private Particles particles = new Particles(MAX_PARTICLES);
+    /** Throws sparks when a light is switched. */
+    private Emitter sparks = Emitter.burst();
+    /** Sprays from the hero while the fire hose key is down. */
+    private Emitter hose = Emitter.fireHose(HOSE_ANGLE);
+    /** Puffs pollen up when the hero lands. */
+    private Emitter pollen = Emitter.pollen();
+    /** Whether the hero was on the ground last step. */
+    private boolean wasOnGround;
+    /** Whether the hero last moved left, to point the hose. */
+    private boolean facingLeft;
     
     /**
     * Constructor: Sets up this panel and loads the images.
     */
     public Engine() {
-        addKeyListener(new Controller());
+        init(null);
+    }
+
+    /**
+    * Constructor: Sets up this panel to play a level file.
+    * @param levelFile The level to play, as written by LevelFile.
+    * @throws IOException if the level file can't be opened.
+    */
+    public Engine(File levelFile) throws IOException {
+        init(LevelFile.open(levelFile, tp));
+    }
+
+    /**
+    * Set up the panel, the world and the main loop.
+    * @param level The level to play, or null for a random one.
+    */
+    private void init(Level level) {
+        addKeyListener(controller);
         
         setBackground(Color.black);
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
@@ -105,8 +184,10 @@ public class Engine extends JPanel implements Runnable {
         final int defWidth = 150;
         final int defHeight = 15;
         final Random gen = new Random();
-        //50% random, 25% hills, 25% platform
-        if (gen.nextBoolean()) {
+        //the given level, or 50% random, 25% hills, 25% platform
+        if (level != null) {
+            world = level;
+        } else if (gen.nextBoolean()) {
           world = RandomLevel.genWorldRandom(defWidth, defHeight, tp);
         } else {
             if (gen.nextBoolean()) {
@@ -119,23 +200,20 @@ public class Engine extends JPanel implements Runnable {
 
         //init hero
         hero = new Hero();
-        hero.setImage(tp.get(Texture.hero));
-        hero.setPos(world.getStart());
+        hero.setSprite(tp.getSprite(Texture.hero));
+        sim = new Simulation(world, hero);
+        sim.setViewSize(WIDTH, HEIGHT);
+        sim.setTriggerListener(new Effects());
         renderer.addDynProp(hero);
+        renderer.setAtlas(tp.getAtlas());
+        renderer.setParticles(particles);
         renderer.setWorld(world);
         
-        //init test light
-        Point[] bgLights = world.getAll(Texture.bgLightDead);
-        Light tempLight;
-        final int cso = 15; //Cell size offset.
-        final int rRange = 100;
-        final int rMin = 75;
-        
-        for (Point light : bgLights) {
-            tempLight = new Light(light.x + cso, light.y + cso, world);
-            tempLight.setRadius((short) (Math.random() * rRange + rMin));
-            renderer.addStaticProp(tempLight);
-            triggers.add(tempLight);
+        //draw the lights (and any other visible triggers) as lights
+        for (Trigger trigger : sim.getTriggers()) {
+            if (trigger instanceof Drawable) {
+                renderer.addLight((Drawable) trigger);
+            }
         }
 
         //Don't start this loop until setup is complete! 
@@ -146,42 +224,111 @@ public class Engine extends JPanel implements Runnable {
         }
     }
 
+    /**
+     * Draw frames actively: on a Canvas filling the panel, from a 
+     * render thread, with page flipping.  Call before showing the panel.
+     */
+    public void useActiveRendering() {
+        Thread render;
+        if (canvas != null) {
+            return;
+        }
+        canvas = new Canvas();
+        //we draw it; Swing shouldn't
+        canvas.setIgnoreRepaint(true);
+        canvas.addKeyListener(controller);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+        render = new Thread(new Presenter(), "render");
+        render.setDaemon(true);
+        render.start();
+    }
+
+    /**
+     * Set how many physics steps are simulated per second of game time.
+     * Physics results depend only on this, not on the frame rate.
+     * @param ticksPerSecond The physics step rate (e.g. 120)
+     */
+    public void setTickRate(int ticksPerSecond) {
+        tickLength = NS_PER_S / ticksPerSecond;
+    }
+
+    /**
+     * Set how far the main loop may get ahead of the drawing: a 
+     * trade between latency and throughput.  Takes effect from the 
+     * next frame.
+     * @param frames 0 to only ever draw the newest frame, so the loop 
+     * never waits and frames the drawing can't keep up with are 
+     * skipped; or the most frames that may wait to be drawn, so every 
+     * frame is drawn, each that much later.  Only active rendering 
+     * draws every frame: Swing merges repaints, so when it paints, 
+     * the newest frame is drawn and the others waiting are skipped.
+     */
+    public void setPipelineDepth(int frames) {
+        pipelineDepth = frames;
+    }
+
+    /**
+     * Set how many frames per second to try to draw.
+     * @param fps The target frame rate
+     */
+    public void setFrameRate(int fps) {
+        frameLength = NS_PER_S / fps;
+    }
+
     /**
     * Draws everything onto the main panel.
     * @param page Graphics component to draw on
     */
     public void paintComponent(Graphics page) {
         super.paintComponent(page);
-        setForeground(Color.cyan);
-        
-        renderer.draw(page, this, offX, offY);
+        Snapshot snap;
+        //the render thread draws on the canvas, when there is one
+        if (canvas != null) {
+            return;
+        }
+        //the newest frame, or the last one again if Swing asks.
+        //Swing merges repaints, so take every frame waiting, or the 
+        //loop would fall further behind with each one merged.
+        while ((snap = snapshots.acquire()) != null) {
+            shown = snap;
+        }
+        if (shown != null) {
+            paintFrame(page, this, shown);
+        }
+    }
+
+    /**
+    * Draws the game and its overlay.
+    * @param page Graphics component to draw on
+    * @param comp The component drawn on, for its size
+    * @param snap The frame to draw
+    */
+    private void paintFrame(Graphics page, Component comp, Snapshot snap) {
+        renderer.draw(page, comp, snap);
+        page.setColor(Color.cyan);
         
 //        hero.draw(this, page, offX, offY);
         
-        for (Entity effect : effects) {
-            effect.draw(this, page, offX, offY);
-            /*if (effect instanceof Burst) {
-                Burst pop = (Burst) effect;
-                pop.draw(this, page, offX, offY);
-            }*/
-        }
-        
         //Draw hero position information
-        Rectangle r = hero.getBounds();
-        page.drawString("Position: x = " + (r.x + (r.width >> 1)), 
+        page.drawString("Position: x = " + snap.heroX, 
                 SCORE_PLACE_X, 
                 SCORE_PLACE_Y);
         final int tab = 100; 
         final int lineHeight = 20;
-        page.drawString("y = " + (r.y + (r.height >> 1)), 
+        page.drawString("y = " + snap.heroY, 
                 SCORE_PLACE_X + tab, 
                 SCORE_PLACE_Y);
-        page.drawString("Frame: " + frame, 
+        page.drawString("Frame: " + snap.frame, 
                 SCORE_PLACE_X, 
                 SCORE_PLACE_Y + lineHeight);
+        if (showProfiler) {
+            Profiler.drawOverlay(page, 
+                    SCORE_PLACE_X, 
+                    SCORE_PLACE_Y + lineHeight * 2);
+        }
         
-        
-        if (!running) {
+        if (snap.over) {
             page.drawString("Game over :(", 
                     WIDTH / 2, 
                     HEIGHT / 2);
@@ -189,116 +336,6 @@ public class Engine extends JPanel implements Runnable {
         
     }
 
-    /**
-     * Calculate the physics in our world for the given object.
-     * @param obj The object to move
-     * @param timeStep The time since last evaluation in nanoseconds
-     */
-    public void simulate(Dynamic obj, long timeStep) {
-        /* Actions:
-         * 1. apply drag
-         * 2. add forces to object
-         *     - gravity (unless resting on block)
-         *     - arrow keys
-         *     
-         * 3. apply forces to object. (done by the object)
-         * 
-         * 4. a) move in x axis
-         * 5. a) resolve collisions in x axis
-         * 
-         * 4. b) move in y axis
-         * 5. b) resolve collisions in y axis
-         */
-        double seconds = timeStep / (double) NS_PER_S;
-        
-        // 1. apply drag
-        obj.applyDrag(seconds);
-        
-        // 2. add forces
-        obj.addForce(new Vector2D(0, GRAVITY));
-        obj.addForce(keyForce);
-        
-        // 3. apply forces
-        obj.applyForces(seconds);
-        
-        
-        // get velocity in preparation for step 4
-        Vector2D vel = obj.getVel();
-        hero.setImage(tp.get(Texture.hero));
-
-        // 4. a)  move x
-        obj.move((int) (vel.x * seconds), 0);
-        
-        // 5. a) resolve collisions in x
-        Point bad = getWorldCollision(obj, Texture.brick);
-//        bad = null;
-        if (bad != null) {
-            int resolution = world.escapeX(obj, vel.x * seconds, bad);
-
-            obj.move(resolution, 0);
-            obj.getVel().setX(0);
-        }
-        
-        // 4. b)  move y
-        obj.move(0, (int) (vel.y * seconds));
-
-        
-        // 5. b) resolve collisions in y
-        bad = getWorldCollision(obj, Texture.brick);
-//        bad = null;
-        if (bad != null) {
-            int resolution = world.escapeY(obj, vel.y * seconds, bad);
-            if (vel.y < 0) {
-                hero.setOnGround(true);
-                hero.setImage(tp.get(Texture.heroGround));
-            }
-            obj.move(0, resolution);
-            obj.getVel().setY(0);
-        } else {
-            hero.setOnGround(false);
-        }
-    }
-    
-    /**
-     * Compare an object to the world to identify any collisions. The obj 
-     * is compared to blocks it is directly overtop of. Returns null if 
-     * no collisions are found.
-     * @param obj The entity to test against the world.
-     * @param target The block type to test for
-     * @return the first collision found, if any. Null if none.
-     */
-    private Point getWorldCollision(Dynamic obj, Texture target) {
-        Rectangle r = obj.getCollisionBox();
-        Point lowerLeft = new Point(r.x, r.y);
-        Point upperRight = new Point(r.x + r.width - 1, 
-                r.y + r.height - 1);
-        int cell = World.CELL_SIZE;
-
-        //If x is negative, offset by 1. It sucks but is necessary.
-        if (lowerLeft.x < 0) {
-            lowerLeft.x -= cell;
-        }
-        if (upperRight.x < 0) {
-            upperRight.x -= cell;
-        }
-        
-        //Convert pixel coordinates to world coordinates.
-        lowerLeft.x /= cell;
-        lowerLeft.y /= cell;
-        upperRight.x /= cell;
-        upperRight.y /= cell;
-        
-        //Test for overlap with the target block type
-        for (int x = (lowerLeft.x); x <= (upperRight.x); x++) {
-            for (int y = (lowerLeft.y); y <= (upperRight.y); y++) {
-                if (world.getCell(x, y) == target) {
-                    return new Point(x, y);
-                }
-            }
-        }
-        return null;
-    }
-
     /**
      * Represents the listener for keyboard activity.
      */
@@ -319,16 +356,16 @@ public class Engine extends JPanel implements Runnable {
         public void keyPressed(KeyEvent event) {
             switch (event.getKeyCode()) {
             case KeyEvent.VK_UP:
-                offY += SCROLL_SPEED;
+                scrollY.addAndGet(SCROLL_SPEED);
                 break;
             case KeyEvent.VK_DOWN:
-                offY -= SCROLL_SPEED;
+                scrollY.addAndGet(-SCROLL_SPEED);
                 break;
             case KeyEvent.VK_LEFT:
-                offX -= SCROLL_SPEED;
+                scrollX.addAndGet(-SCROLL_SPEED);
                 break;
             case KeyEvent.VK_RIGHT:
-                offX += SCROLL_SPEED;
+                scrollX.addAndGet(SCROLL_SPEED);
                 break;
             case KeyEvent.VK_W:
                 up = true;
@@ -343,9 +380,13 @@ public class Engine extends JPanel implements Runnable {
                 right = true;
                 break;
             case KeyEvent.VK_SPACE:
-                if (hero.isOnGround()) {
-                    hero.setVel(new Vector2D(hero.getVel().x, JUMP)); 
-                }
+                jumped.set(true);
+                break;
+            case KeyEvent.VK_P:
+                showProfiler = !showProfiler;
+                break;
+            case KeyEvent.VK_F:
+                hosing = true;
                 break;
             default:
                 // ignore other characters
@@ -373,6 +414,9 @@ public class Engine extends JPanel implements Runnable {
             case KeyEvent.VK_D:
                 right = false;
                 break;
+            case KeyEvent.VK_F:
+                hosing = false;
+                break;
             default:
                 // ignore other characters
             }
@@ -385,17 +429,130 @@ public class Engine extends JPanel implements Runnable {
          * and applies forces accordingly.
          */
         private void updateForces() {
-            keyForce.set(0.0, 0.0);
+            double x = 0.0;
+            double y = 0.0;
 
             if (up && !down) {
-                keyForce.offset(0, SPEED);
+                y = SPEED;
             } else if (down && !up) {
-                keyForce.offset(0, -SPEED);
+                y = -SPEED;
             }
             if (left && !right) {
-                keyForce.offset(-SPEED, 0);
+                x = -SPEED;
             } else if (right && !left) {
-                keyForce.offset(SPEED, 0);
+                x = SPEED;
+            }
+            keyX = x;
+            keyY = y;
+        }
+    }
+    
+    /**
+     * Draws frames onto the canvas as the main loop finishes them, 
+     * until game over.
+     */
+    private class Presenter implements Runnable {
+        /** Where frames are drawn, once the canvas is on screen. */
+        private BufferStrategy strategy;
+
+        /**
+         * Wait for frames, and draw and flip each one the snapshot 
+         * channel hands over.
+         */
+        public void run() {
+            long seen = 0;
+            long ready;
+            Snapshot snap;
+
+            while ((ready = awaitFrame(seen)) != seen) {
+                //frames published after this get another wake up
+                seen = ready;
+                while ((snap = snapshots.acquire()) != null) {
+                    show(snap);
+                }
+            }
+        }
+
+        /**
+         * Draw a frame and flip it onto the screen.
+         * @param snap The frame to draw
+         */
+        private void show(Snapshot snap) {
+            Graphics page;
+            if (!canvas.isDisplayable() || canvas.getWidth() == 0) {
+                return;
+            }
+            if (strategy == null) {
+                canvas.createBufferStrategy(PAGES);
+                strategy = canvas.getBufferStrategy();
+                canvas.requestFocusInWindow();
+            }
+            //the buffers can be lost (e.g. to a mode change); 
+            //draw again until a whole frame makes it to the screen
+            do {
+                do {
+                    page = strategy.getDrawGraphics();
+                    try {
+                        paintFrame(page, canvas, snap);
+                    } finally {
+                        page.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            Toolkit.getDefaultToolkit().sync();
+        }
+    }
+
+    /**
+     * Tell whoever draws frames that a new one is ready.
+     */
+    private void present() {
+        if (canvas == null) {
+            repaint();
+            return;
+        }
+        synchronized (frameLock) {
+            framesReady++;
+            frameLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the main loop to make a frame ready.
+     * @param drawn The last frame drawn
+     * @return The newest frame ready, or drawn if the game is over.
+     */
+    private long awaitFrame(long drawn) {
+        synchronized (frameLock) {
+            while (framesReady == drawn && running) {
+                try {
+                    frameLock.wait();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            return framesReady;
+        }
+    }
+
+    /**
+     * Adds the visual effects when a trigger fires.
+     */
+    private class Effects implements TriggerListener {
+        @Override
+        public void triggerFired(Trigger trigger) {
+            Point pos;
+            if (trigger instanceof Light) {
+                pos = ((Light) trigger).getPos();
+                sparks.emit(particles, pos.x, pos.y);
+
+                //only the light's tile needs recompositing; 
+                //the glow itself is drawn fresh every frame.
+                renderer.invalidate(new Rectangle(
+                        pos.x - pos.x % Level.CELL_SIZE,
+                        pos.y - pos.y % Level.CELL_SIZE,
+                        Level.CELL_SIZE, Level.CELL_SIZE));
             }
         }
     }
@@ -403,126 +560,157 @@ public class Engine extends JPanel implements Runnable {
     /**
      * The main loop, that controls all the action. 
      * It repeats until game over.
+     * <p>Physics always advances in fixed steps of tickLength. Each frame
+     * runs however many steps fit in the time that has passed (so a slow 
+     * frame catches up with several small steps instead of one big one),
+     * then draws part way between the last two steps.</p>
      */
     public void run() {
         
-        long start = System.nanoTime();
+        long previous = System.nanoTime();
+        long nextFrame = previous;
+        long now;
+        long lag = 0;
+        long step;
+        long t;
         long elapsed;
-        long wait;
-        final int minTimeBetweenFrames = 5;
+        long moved;
+        long effectTime;
+        double seconds;
+        double alpha;
+        int depth = 0;
+        SnapshotChannel channel = snapshots;
 
         while (running) {
             //Timing
-            //elapsed is the number of nanoseconds since last frame
-            elapsed = System.nanoTime() - start;
-            elapsed = Math.min(MAX_FRAME, elapsed);
-            start = System.nanoTime();
-            Point pos = hero.getPos();
+            //lag is the game time that hasn't been simulated yet
+            now = System.nanoTime();
+            elapsed = Math.min(MAX_FRAME, now - previous);
+            lag += elapsed;
+            previous = now;
+            step = tickLength;
+            seconds = step / (double) NS_PER_S;
+            effectTime = 0;
             frame++;
+            t = Profiler.start();
             
-            
-            //Physics!
-            simulate(hero, elapsed);
-            
-            //Move camera
-            updateCamPos();
-            
-            //Test 'victory' conditions
-            if (pos.y < LOWER_BOUND) {
-                running = false;
+            //Physics! As many fixed steps as have elapsed.
+            //The effects move on in the same steps.
+            applyInput();
+            sim.setViewSize(getWidth(), getHeight());
+            while (lag >= step && running) {
+                sim.step(step);
+                running = !sim.isOver();
+                moved = Profiler.start();
+                stepEffects(seconds);
+                effectTime += Profiler.start() - moved;
+                lag -= step;
             }
+            Profiler.record(Stage.updateParticles, effectTime);
+            hero.setSprite(tp.getSprite(hero.isOnGround() 
+                                        ? Texture.heroGround 
+                                        : Texture.hero));
             
-            //Test world events (like touching a light)
-            testTriggers(triggers);
-            
-            //Delete (release) dead effects.
-            deleteDeadEntities();
-            
-            //redraw everything
-            repaint();
-            
-            //"elapsed" is reassigned to the number of nanoseconds 
-            //since this frame began
-            elapsed = System.nanoTime() - start;
-            
-            //wait is how much time is remaining 
-            //before the next frame needs to be drawn.
-            wait = targetTime - elapsed / NS_PER_MS;
-            
-            //wait at least 5 ms between frames.
-            if (wait < 0) {
-                wait = minTimeBetweenFrames;
+            //redraw everything, between the last two steps
+            alpha = lag / (double) step;
+            if (depth != pipelineDepth) {
+                depth = pipelineDepth;
+                channel = depth == 0 
+                        ? new SnapshotBuffer() 
+                        : new SnapshotQueue(depth);
             }
-            try {
-                Thread.sleep(wait);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            capture(channel.getBack(), alpha);
+            Profiler.end(Stage.frame, t);
+            //waits here while the drawing is depth frames behind
+            channel.publish();
+            snapshots = channel;
+            present();
+            
+            //wait until the next frame is due. If we're already late,
+            //start counting again from now rather than rushing frames.
+            nextFrame += frameLength;
+            now = System.nanoTime();
+            if (nextFrame < now) {
+                nextFrame = now;
+                Thread.yield();
             }
+            waitUntil(nextFrame);
 
         } //end while
     } // end run
-
+    
     /**
-     * Tests if the hero triggers world events, like by touching a light.
-     * @param trigs A list of triggers to test.
+     * Move the effects on by one physics step, releasing the dead
+     * particles: puff pollen if the hero just landed, and spray the 
+     * fire hose while its key is down.
+     * @param seconds The length of the step in seconds
      */
-    private void testTriggers(ArrayList<Trigger> trigs) {
-        for (Trigger trigger : trigs) {
-            if (trigger.isTriggered(hero.getBounds())) {
-                trigger.triggerAction();
-                Entity burst = new Burst(tp);
-                burst.setPos(((Light) trigger).getPos());
-                effects.add(burst);
-                
-                if (trigger instanceof Drawable) {  
-                    renderer.invalidate(((Drawable) trigger).getBounds());
-                }
-            }
+    private void stepEffects(double seconds) {
+        Rectangle r = hero.getBounds(heroBounds);
+        boolean onGround = hero.isOnGround();
+        if (onGround && !wasOnGround) {
+            pollen.emit(particles, r.x + (r.width >> 1), r.y);
+        }
+        wasOnGround = onGround;
+        if (keyX != 0) {
+            facingLeft = keyX < 0;
         }
+        if (hosing) {
+            hose.setDirection(facingLeft ? Math.PI - HOSE_ANGLE : HOSE_ANGLE);
+            hose.stream(particles, r.x + (r.width >> 1), 
+                        r.y + (r.height >> 1), seconds);
+        }
+        particles.update(seconds);
     }
 
     /**
-     * Removes dead effects and other inactive entities.
+     * Copy the frame into a snapshot, for drawing.
+     * @param snap The snapshot to fill in
+     * @param alpha How far between the last two physics steps to draw
      */
-    private void deleteDeadEntities() {
-        ArrayList<Entity> deadFX = new ArrayList<Entity>();
-        
-        for (Entity effect : effects) {
-            if (effect instanceof Burst) {
-                Burst pop = (Burst) effect;
-                if (pop.isDead()) {
-                    deadFX.add((Entity) pop);
-                }
-            }
-        }
-        effects.removeAll(deadFX);
+    private void capture(Snapshot snap, double alpha) {
+        Rectangle r = hero.getBounds(heroBounds);
+        snap.camX = sim.getCamX(alpha);
+        snap.camY = sim.getCamY(alpha);
+        snap.alpha = alpha;
+        snap.frame = frame;
+        snap.over = !running;
+        snap.heroX = r.x + (r.width >> 1);
+        snap.heroY = r.y + (r.height >> 1);
+        snap.viewW = getWidth();
+        snap.viewH = getHeight();
+        renderer.capture(snap, alpha);
     }
 
     /**
-     * Move the camera so that our hero doesn't go off-screen.
+     * Pass the key presses since the last frame on to the simulation.
      */
-    private void updateCamPos() {
-        final int marginX = (int) (getWidth() * 0.25);
-        final int marginTop = (int) (getHeight() * 0.2);
-        final int marginBottom = (int) (getHeight() * 0.2);
-        Point pos = hero.getPos();
-        Dimension dim = hero.getSize();
-
-        //      update x motion
-        // If too far left
-        if (pos.x - marginX < offX) {
-            offX = pos.x - marginX;
-        //if too far right
-        } else if (pos.x + marginX > offX + getWidth() - dim.width) {
-            offX = pos.x + marginX - getWidth() + dim.width;
+    private void applyInput() {
+        sim.setKeyForce(keyX, keyY);
+        sim.scrollCamera(scrollX.getAndSet(0), scrollY.getAndSet(0));
+        if (jumped.getAndSet(false)) {
+            sim.jump();
         }
-        //      update y motion
-        //If too low
-        if (pos.y - marginBottom < offY) {
-            offY = pos.y - marginBottom;
-        //If too high
-        } else if (pos.y + marginTop > offY + getHeight() - dim.height) {
-            offY = pos.y + marginTop - getHeight() + dim.height;
+    }
+
+    /**
+     * Sleep until the given time. Sleeps coarsely until close to the 
+     * deadline, then yields, since sleep alone often oversleeps.
+     * @param deadline The System.nanoTime() to wake at.
+     */
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            try {
+                if (remaining > SPIN_WINDOW) {
+                    Thread.sleep((remaining - SPIN_WINDOW) / NS_PER_MS);
+                } else {
+                    Thread.yield();
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            remaining = deadline - System.nanoTime();
         }
     }
 }
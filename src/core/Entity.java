@@ -7,8 +7,6 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 
 /**
  * <p>Base class for drawable entities.  Stores position and image 
@@ -19,12 +17,14 @@ import java.awt.image.DataBufferByte;
 public class Entity implements Drawable {
     /** The position of the entity. */
     private Point pos;
-    /** The image that represents this entity. */
-    private Image brush;
-    /** The image that represents this entity. */
-    private double[][][] pixels;
-    /** The image data, in byte array. */
-    private byte[] data;
+    /** The position of the entity at the previous simulation step. */
+    private Point lastPos;
+    /** The image that represents this entity. May be null. */
+    private Sprite sprite;
+    /** The width of the entity in pixels. */
+    private int width;
+    /** The height of the entity in pixels. */
+    private int height;
     
     /**
      * Constructor: initialized the entity at the origin, 
@@ -32,23 +32,38 @@ public class Entity implements Drawable {
      */
     public Entity() {
         pos = new Point(0, 0);
+        lastPos = new Point(0, 0);
     }
     
     /**
-     * Sets the image to draw for this entity.
+     * Sets the image to draw for this entity.  The image is decoded 
+     * here, so prefer setSprite for images from a TexturePack.
      * @param image The image to draw for this entity
      */
     public void setImage(Image image) {
-        brush = image;
-        pixels = new double[image.getWidth(null)]
-                           [image.getHeight(null)]
-                           [Util.CHANNELS];
-        Util.imageToPixels(Util.toBufferedImage(image), pixels); 
-        
-        BufferedImage bi = Util.toBufferedImage(brush);
-        data = ((DataBufferByte) 
-                bi.getRaster()
-                .getDataBuffer()).getData();
+        setSprite(new Sprite(image));
+    }
+    
+    /**
+     * Sets the sprite to draw for this entity.  Nothing is copied, so 
+     * this is cheap enough to call every step.
+     * @param s The sprite to draw, e.g. from TexturePack.getSprite
+     */
+    public void setSprite(Sprite s) {
+        sprite = s;
+        width = s.getWidth();
+        height = s.getHeight();
+    }
+    
+    /**
+     * Set the size of the entity without giving it an image, 
+     * for entities that are simulated but never drawn.
+     * @param w The width in pixels
+     * @param h The height in pixels
+     */
+    public void setSize(int w, int h) {
+        width = w;
+        height = h;
     }
     
     /**
@@ -56,16 +71,43 @@ public class Entity implements Drawable {
      * @return A new dimension object holding the width and height.
      */
     public Dimension getSize() {
-        return new Dimension(brush.getWidth(null), brush.getHeight(null));
+        return getSize(new Dimension());
+    }
+    /**
+     * Get the width and height of the entity, without allocating.
+     * @param rv The dimension to store the size in.
+     * @return rv, holding the width and height.
+     */
+    public Dimension getSize(Dimension rv) {
+        rv.setSize(width, height);
+        return rv;
     }
     /**
      * Get the bounding box for a Drawable entity.
      * @return the bounding rectangle of the entity.
      */
     public Rectangle getBounds() {
-        return new Rectangle(pos.x, pos.y, 
-                brush.getWidth(null), 
-                brush.getHeight(null));
+        return getBounds(new Rectangle());
+    }
+    /**
+     * Get the bounding box for the entity, without allocating.
+     * @param rv The rectangle to store the bounds in.
+     * @return rv, holding the bounding rectangle of the entity.
+     */
+    public Rectangle getBounds(Rectangle rv) {
+        rv.setBounds(pos.x, pos.y, width, height);
+        return rv;
+    }
+    /**
+     * Get the bounding box between the last two simulation steps.
+     * @param alpha 0 for the previous step, 1 for the current step.
+     * @return the interpolated bounding rectangle of the entity.
+     */
+    public Rectangle getDrawBounds(double alpha) {
+        Rectangle bounds = getBounds();
+        bounds.x = lastPos.x + (int) Math.round((pos.x - lastPos.x) * alpha);
+        bounds.y = lastPos.y + (int) Math.round((pos.y - lastPos.y) * alpha);
+        return bounds;
     }
     /**
      * Set an absolute position for the entity.
@@ -75,6 +117,7 @@ public class Entity implements Drawable {
     public void setPos(int x, int y) {
         pos.x = x;
         pos.y = y;
+        lastPos.setLocation(pos);
     }
     /**
      * Set an absolute position for the entity.
@@ -82,6 +125,14 @@ public class Entity implements Drawable {
      */
     public void setPos(Point p) {
         pos = new Point(p);
+        lastPos.setLocation(pos);
+    }
+    /**
+     * Remember the current position as the previous step's position.
+     * Called at the start of each simulation step.
+     */
+    public void savePos() {
+        lastPos.setLocation(pos);
     }
     /**
      * Adjust the entity's current position.
@@ -113,7 +164,7 @@ public class Entity implements Drawable {
         
         //set x, y to the bottom left corner
         int x = 0;
-        int y = comp.getHeight() - brush.getHeight(null);
+        int y = comp.getHeight() - height;
         
         //move right and up by the x and y values.
         x += pos.x;
@@ -124,12 +175,17 @@ public class Entity implements Drawable {
         y += offsetY;
         
 //        brush.paintIcon(comp, page, x, y);
-        page.drawImage(brush, x, y, null);
+        page.drawImage(sprite.getImage(), x, y, null);
+    }
+
+    @Override
+    public Image getImage() {
+        return sprite == null ? null : sprite.getImage();
     }
 
     @Override
-    public double[][][] getPixels() {
-        return pixels;
+    public PixelBuffer getPixels() {
+        return sprite == null ? null : sprite.getPixels();
     }
 
     @Override
@@ -145,6 +201,6 @@ public class Entity implements Drawable {
 
     @Override
     public byte[] getData() {
-        return data;
+        return sprite == null ? null : sprite.getData();
     }
 }
@@ -0,0 +1,158 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import core.creatures.Hero;
+import core.world.Level;
+import core.world.RandomLevel;
+
+/**
+ * <p>Runs simulated sessions with no window, textures or painting,
+ * and reports how fast the simulation runs and how much it allocates.
+ * Stepping should allocate nothing; anything else turns into garbage
+ * collection pauses in the game.</p>
+ * <p>Usage: java -Djava.awt.headless=true core.Headless
+ * [sessions] [steps per session]</p>
+ * <p>Exits with status 1 if stepping allocated anything after warm up,
+ * so scripts can check for allocation regressions.  Run it with
+ * -XX:TieredStopAtLevel=1 for an exact count, as the tests do: C2
+ * allocates a few hundred bytes now and then as it recompiles.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Headless {
+    /** Physics steps per second of game time. */
+    private static final int TICK_RATE = 120;
+    /** Nanoseconds per second. */
+    private static final long NS_PER_S = 1000000000L;
+    /** Level width in tiles. */
+    private static final int COLS = 150;
+    /** Level height in tiles. */
+    private static final int ROWS = 15;
+    /** Size of the hero, since there's no image to measure. */
+    private static final int HERO_SIZE = 30;
+    /** Sessions to run before counting allocations (class loading and
+     * deoptimization allocate while the JIT settles). */
+    static final int WARMUP = 100;
+    /** Thread statistics, looked up once so reading them is free. */
+    private static final ThreadMXBean THREADS = 
+            ManagementFactory.getThreadMXBean();
+
+    /**
+     * Build a session on a random level, with no textures.
+     * @param type Which generator to use (0, 1 or 2)
+     * @return A new simulation, ready to step.
+     */
+    public static Simulation newSession(int type) {
+        Level level;
+        switch (type % 3) {
+        case 0:
+            level = RandomLevel.genWorldRandom(COLS, ROWS, null);
+            break;
+        case 1:
+            level = RandomLevel.genWorldHills(COLS, ROWS, null);
+            break;
+        default:
+            level = RandomLevel.genWorldPlatform(COLS, ROWS, null);
+            break;
+        }
+        Hero hero = new Hero();
+        hero.setSize(HERO_SIZE, HERO_SIZE);
+        return new Simulation(level, hero);
+    }
+
+    /**
+     * Run the sessions and print the simulation throughput.  Exits with
+     * status 1 if stepping allocated after warm up.
+     * @param args number of sessions, then steps per session.
+     */
+    public static void main(String[] args) {
+        final int defSessions = 1000;
+        final int defSteps = 1200;
+        int sessions = args.length > 0
+                ? Integer.parseInt(args[0]) : defSessions;
+        int steps = args.length > 1
+                ? Integer.parseInt(args[1]) : defSteps;
+        long totalSteps = 0;
+        long simTime = 0;
+        long allocated = 0;
+        long countedSteps = 0;
+        long start;
+        long bytes;
+        int over = 0;
+        Simulation sim;
+
+        for (int i = 0; i < sessions; i++) {
+            sim = newSession(i);
+            //only time the stepping, not the level building
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            play(sim, steps);
+            simTime += System.nanoTime() - start;
+            if (i >= WARMUP) {
+                allocated += allocatedBytes() - bytes;
+                countedSteps += sim.getTicks();
+            }
+            totalSteps += sim.getTicks();
+            if (sim.isOver()) {
+                over++;
+            }
+        }
+
+        System.out.println(sessions + " sessions, " + totalSteps
+                + " steps in " + (simTime / (NS_PER_S / 1000)) + " ms");
+        System.out.println((long) (totalSteps / (simTime / (double) NS_PER_S))
+                + " steps/s, " + over + " sessions fell out of the world");
+        if (allocatedBytes() >= 0 && countedSteps > 0) {
+            System.out.println((allocated / (double) countedSteps)
+                    + " bytes allocated per step after warm up");
+            if (allocated > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Play a session: run right, jumping once a second, until the hero
+     * falls out of the world or the steps run out.
+     * @param sim The session to play
+     * @param steps The most steps to play
+     */
+    static void play(Simulation sim, int steps) {
+        final double run = 1000;
+        long tick = NS_PER_S / TICK_RATE;
+
+        sim.setKeyForce(run, 0);
+        for (int s = 0; s < steps && !sim.isOver(); s++) {
+            if (s % TICK_RATE == 0) {
+                sim.jump();
+            }
+            sim.step(tick);
+        }
+    }
+
+    /**
+     * Get the bytes allocated by this thread so far, if the JVM 
+     * keeps count (HotSpot does).
+     * @return bytes allocated by the current thread, or -1 if unknown.
+     */
+    static long allocatedBytes() {
+        return allocatedBytes(Thread.currentThread());
+    }
+
+    /**
+     * Get the bytes allocated by a thread so far, if the JVM keeps
+     * count (HotSpot does).
+     * @param thread The thread to ask about
+     * @return bytes allocated by the thread, or -1 if unknown.
+     */
+    static long allocatedBytes(Thread thread) {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS)
+                    .getThreadAllocatedBytes(thread.getId());
+        }
+        return -1;
+    }
+}
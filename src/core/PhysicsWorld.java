@@ -0,0 +1,549 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import core.world.Contact;
+import core.world.Level;
+
+/**
+ * <p>Steps any number of Dynamic bodies against the tiles of a Level.</p>
+ * <p>The world owns the motion state of every body: position, sub-pixel
+ * remainder, velocity, force, drag and collision box are kept in
+ * parallel arrays (one array per field, indexed by body) rather than in
+ * the body objects.  A step walks straight through those arrays, so
+ * thousands of bodies stay cheap.  The Dynamic objects only hear about
+ * the results: each step they are moved by the distance they travelled
+ * and told whether they are on the ground.</p>
+ * <p>Bodies are referred to by the index add() returns.  They are
+ * also kept in a SpatialGrid, so bodies near an area or touching each
+ * other can be found without testing every pair.</p>
+ * <p>With many bodies the step is split across a ForkJoinPool.  A body
+ * only reads the level and writes its own slot in each array, so the
+ * pieces never touch each other and the result is identical to 
+ * stepping the bodies one after another.  The pieces are fixed ranges
+ * of bodies whose tasks are made once and reused, and the stepping
+ * thread steps the first range itself, then parks until the rest are
+ * done, so a parallel step allocates nothing either.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class PhysicsWorld {
+    /** Nanoseconds per second. */
+    private static final long NS_PER_S = 1000000000L;
+    /** Room for this many bodies before the arrays first grow. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** Bodies per task; fewer than this aren't worth splitting. */
+    private static final int SERIAL_THRESHOLD = 256;
+    /** The pool shared by every world, created when first needed. */
+    private static ForkJoinPool sharedPool;
+
+    /** The level the bodies collide with. */
+    private Level level;
+    /** The tile flags that bodies can't pass through. */
+    private int solid = Level.SOLID;
+    /** Gravity in x, applied to every body. */
+    private double gravityX;
+    /** Gravity in y, applied to every body. */
+    private double gravityY;
+    /** Whether to split big steps across the shared pool. */
+    private boolean parallel = true;
+
+    /** Number of bodies in the world. */
+    private int count;
+    /** The bodies, to report results to. */
+    private Dynamic[] bodies = new Dynamic[INITIAL_CAPACITY];
+    /** Position of each body in x, in pixels. */
+    private int[] posX = new int[INITIAL_CAPACITY];
+    /** Position of each body in y, in pixels. */
+    private int[] posY = new int[INITIAL_CAPACITY];
+    /** Movement in x not yet applied because it's less than a pixel. */
+    private double[] remX = new double[INITIAL_CAPACITY];
+    /** Movement in y not yet applied because it's less than a pixel. */
+    private double[] remY = new double[INITIAL_CAPACITY];
+    /** Velocity of each body in x, in pixels per second. */
+    private double[] velX = new double[INITIAL_CAPACITY];
+    /** Velocity of each body in y, in pixels per second. */
+    private double[] velY = new double[INITIAL_CAPACITY];
+    /** Force pushing each body in x until the next step. */
+    private double[] forceX = new double[INITIAL_CAPACITY];
+    /** Force pushing each body in y until the next step. */
+    private double[] forceY = new double[INITIAL_CAPACITY];
+    /** Fraction of x velocity each body loses per second. */
+    private double[] dragX = new double[INITIAL_CAPACITY];
+    /** Fraction of y velocity each body loses per second. */
+    private double[] dragY = new double[INITIAL_CAPACITY];
+    /** Left of each collision box, relative to the body's position. */
+    private int[] boxX = new int[INITIAL_CAPACITY];
+    /** Bottom of each collision box, relative to the body's position. */
+    private int[] boxY = new int[INITIAL_CAPACITY];
+    /** Width of each collision box. */
+    private int[] boxW = new int[INITIAL_CAPACITY];
+    /** Height of each collision box. */
+    private int[] boxH = new int[INITIAL_CAPACITY];
+    /** Whether each body is resting on something solid. */
+    private boolean[] onGround = new boolean[INITIAL_CAPACITY];
+    /** The id of each body in the grid. */
+    private int[] gridId = new int[INITIAL_CAPACITY];
+    /** The collision boxes of the bodies, by tile. */
+    private SpatialGrid<Dynamic> grid = 
+            new SpatialGrid<Dynamic>(Level.CELL_SIZE);
+
+    /** Scratch box for reading collision boxes. */
+    private final Rectangle box = new Rectangle();
+    /** Scratch contact for serial steps. Parallel tasks use their own. */
+    private final Contact contact = new Contact();
+    /** The tasks for the ranges of a parallel step, made as needed. */
+    private Integrate[] tasks = new Integrate[0];
+    /** Ranges of the current parallel step that aren't done yet. */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** The thread waiting for the current parallel step. */
+    private volatile Thread stepper;
+    /** Anything a range of the current parallel step threw. */
+    private volatile Throwable failure;
+
+    /**
+     * Constructor for an empty world.
+     * @param level The level the bodies collide with.
+     */
+    public PhysicsWorld(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Set the gravity that pulls on every body.
+     * @param x The force to the right
+     * @param y The force upwards
+     */
+    public void setGravity(double x, double y) {
+        gravityX = x;
+        gravityY = y;
+    }
+
+    /**
+     * Choose whether steps with many bodies run on every core.
+     * The results are the same either way.
+     * @param on true to split big steps across a ForkJoinPool.
+     */
+    public void setParallel(boolean on) {
+        parallel = on;
+    }
+
+    /**
+     * Add a body to the world.  Its position, collision box and drag
+     * are read now; after this the world moves it.
+     * @param body The body to add.
+     * @return The index of the body, for use with the other methods.
+     */
+    public int add(Dynamic body) {
+        if (count == bodies.length) {
+            grow(count * 2);
+        }
+        int i = count++;
+        bodies[i] = body;
+        Vector2D drag = body.getDrag();
+        dragX[i] = drag.x;
+        dragY[i] = drag.y;
+        gridId[i] = grid.add(body, 0, 0, 0, 0);
+        reset(i);
+        return i;
+    }
+
+    /**
+     * Remove a body from the world.  The last body moves into the
+     * freed index, so its index changes from size() - 1 to i.
+     * @param i The index of the body to remove.
+     */
+    public void remove(int i) {
+        int last = --count;
+        grid.remove(gridId[i]);
+        gridId[i] = gridId[last];
+        bodies[i] = bodies[last];
+        posX[i] = posX[last];
+        posY[i] = posY[last];
+        remX[i] = remX[last];
+        remY[i] = remY[last];
+        velX[i] = velX[last];
+        velY[i] = velY[last];
+        forceX[i] = forceX[last];
+        forceY[i] = forceY[last];
+        dragX[i] = dragX[last];
+        dragY[i] = dragY[last];
+        boxX[i] = boxX[last];
+        boxY[i] = boxY[last];
+        boxW[i] = boxW[last];
+        boxH[i] = boxH[last];
+        onGround[i] = onGround[last];
+        bodies[last] = null;
+    }
+
+    /**
+     * Get the number of bodies in the world.
+     * @return the body count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get a body.
+     * @param i The index of the body
+     * @return the body at that index
+     */
+    public Dynamic getBody(int i) {
+        return bodies[i];
+    }
+
+    /**
+     * Re-read a body's position and collision box, after it was placed
+     * by hand (e.g. with Entity.setPos).  It is left standing still.
+     * @param i The index of the body
+     */
+    public void reset(int i) {
+        Dynamic body = bodies[i];
+        Point pos = body.getPos();
+        Rectangle r = body.getCollisionBox(box);
+        posX[i] = pos.x;
+        posY[i] = pos.y;
+        boxX[i] = r.x - pos.x;
+        boxY[i] = r.y - pos.y;
+        boxW[i] = r.width;
+        boxH[i] = r.height;
+        remX[i] = 0;
+        remY[i] = 0;
+        velX[i] = 0;
+        velY[i] = 0;
+        forceX[i] = 0;
+        forceY[i] = 0;
+        onGround[i] = false;
+        grid.move(gridId[i], r);
+    }
+
+    /**
+     * Push a body until the next step.
+     * @param i The index of the body
+     * @param x The force to the right
+     * @param y The force upwards
+     */
+    public void addForce(int i, double x, double y) {
+        forceX[i] += x;
+        forceY[i] += y;
+    }
+
+    /**
+     * Set the velocity of a body.
+     * @param i The index of the body
+     * @param x The velocity to the right, in pixels per second
+     * @param y The velocity upwards, in pixels per second
+     */
+    public void setVel(int i, double x, double y) {
+        velX[i] = x;
+        velY[i] = y;
+    }
+
+    /**
+     * Get the velocity of a body in x.
+     * @param i The index of the body
+     * @return the velocity to the right, in pixels per second
+     */
+    public double getVelX(int i) {
+        return velX[i];
+    }
+
+    /**
+     * Get the velocity of a body in y.
+     * @param i The index of the body
+     * @return the velocity upwards, in pixels per second
+     */
+    public double getVelY(int i) {
+        return velY[i];
+    }
+
+    /**
+     * Check if a body is resting on something solid.
+     * @param i The index of the body
+     * @return true if the body landed and hasn't left the ground since.
+     */
+    public boolean isOnGround(int i) {
+        return onGround[i];
+    }
+
+    /**
+     * Advance every body by one physics step.
+     * @param timeStep The length of the step in nanoseconds
+     */
+    public void step(long timeStep) {
+        double seconds = timeStep / (double) NS_PER_S;
+        if (parallel && count > SERIAL_THRESHOLD) {
+            integrateParallel(seconds);
+        } else {
+            integrate(0, count, seconds, contact);
+        }
+        //the grid isn't thread safe, so it catches up here, serially.
+        //Most bodies stay in their cells, which costs nothing.
+        for (int i = 0; i < count; i++) {
+            grid.move(gridId[i], posX[i] + boxX[i], posY[i] + boxY[i],
+                      boxW[i], boxH[i]);
+        }
+    }
+
+    /**
+     * Find the bodies whose collision boxes overlap an area.
+     * @param area The area to search, in pixels.
+     * @param out The list to add the bodies to. Not cleared first.
+     */
+    public void query(Rectangle area, List<Dynamic> out) {
+        grid.query(area, out);
+    }
+
+    /**
+     * Find the bodies whose collision boxes overlap a body's own.
+     * @param i The index of the body
+     * @param out The list to add the bodies to, not including body i.
+     * Not cleared first.
+     */
+    public void getOverlapping(int i, List<Dynamic> out) {
+        int before = out.size();
+        grid.query(posX[i] + boxX[i], posY[i] + boxY[i],
+                   boxW[i], boxH[i], out);
+        for (int k = before; k < out.size(); k++) {
+            if (out.get(k) == bodies[i]) {
+                out.remove(k);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Step a range of bodies, one after another.
+     * @param from The index of the first body
+     * @param to One past the index of the last body
+     * @param seconds The length of the step in seconds
+     * @param c Scratch space for collisions
+     */
+    private void integrate(int from, int to, double seconds, Contact c) {
+        for (int i = from; i < to; i++) {
+            integrate(i, seconds, c);
+        }
+    }
+
+    /**
+     * Step every body, in ranges of at most SERIAL_THRESHOLD bodies
+     * spread over the shared pool.  Returns once every range is done.
+     * Only allocates tasks if the world has grown since last time.
+     * @param seconds The length of the step in seconds
+     */
+    private void integrateParallel(double seconds) {
+        int ranges = (count + SERIAL_THRESHOLD - 1) / SERIAL_THRESHOLD;
+        int size = (count + ranges - 1) / ranges;
+        ForkJoinPool pool = getPool();
+        Throwable thrown;
+
+        if (tasks.length < ranges) {
+            tasks = Arrays.copyOf(tasks, ranges);
+            for (int k = 0; k < ranges; k++) {
+                if (tasks[k] == null) {
+                    tasks[k] = new Integrate();
+                }
+            }
+        }
+        stepper = Thread.currentThread();
+        pending.set(ranges);
+        for (int k = 0; k < ranges; k++) {
+            tasks[k].setRange(k * size, Math.min(count, (k + 1) * size),
+                              seconds);
+        }
+        //the pool takes the rest; this thread steps the first range
+        for (int k = 1; k < ranges; k++) {
+            pool.execute(tasks[k]);
+        }
+        tasks[0].exec();
+        while (pending.get() != 0) {
+            LockSupport.park(this);
+        }
+        stepper = null;
+        if (failure != null) {
+            thrown = failure;
+            failure = null;
+            throw new IllegalStateException("physics step failed", thrown);
+        }
+    }
+
+    /**
+     * Get the pool to run big steps on, creating it the first time.
+     * @return a pool with a thread per core.
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool();
+        }
+        return sharedPool;
+    }
+
+    /**
+     * <p>Steps one range of bodies for a parallel step, then counts
+     * itself done, waking the stepping thread if it was the last.  It is
+     * reused every step, with its own scratch contact.</p>
+     * <p>The pending count says when the step is done, so the pool is 
+     * never told the task is: it stays runnable, and can be run again 
+     * next step without waiting for the pool or reinitializing it.
+     * Nothing joins it.</p>
+     */
+    private class Integrate extends ForkJoinTask<Void> {
+        /** Unique version of this task. */
+        private static final long serialVersionUID = 1L;
+        /** Scratch space for this range's collisions. */
+        private final Contact scratch = new Contact();
+        /** The index of the first body. */
+        private int from;
+        /** One past the index of the last body. */
+        private int to;
+        /** The length of the step in seconds. */
+        private double seconds;
+
+        /**
+         * Choose the bodies the next run steps.
+         * @param first The index of the first body
+         * @param end One past the index of the last body
+         * @param length The length of the step in seconds
+         */
+        void setRange(int first, int end, double length) {
+            from = first;
+            to = end;
+            seconds = length;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+        }
+
+        @Override
+        protected boolean exec() {
+            try {
+                integrate(from, to, seconds, scratch);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            } finally {
+                //the stepping thread checks pending before it parks
+                if (pending.decrementAndGet() == 0
+                        && Thread.currentThread() != stepper) {
+                    LockSupport.unpark(stepper);
+                }
+            }
+            //never done, so it can be run again as it is
+            return false;
+        }
+    }
+
+    /**
+     * Move one body by one step and resolve its collisions with the
+     * level, then tell the body where it ended up.
+     * <p>Steps:</p>
+     * <ol><li>apply drag</li>
+     * <li>apply gravity and forces to velocity</li>
+     * <li>sweep in x, stopping against the first brick in the way</li>
+     * <li>sweep in y, stopping against the first brick in the way</li>
+     * </ol>
+     * <p>Sweeping, rather than moving and then checking for overlap, 
+     * means a body can't pass through a brick however fast it goes.</p>
+     * @param i The index of the body
+     * @param seconds The length of the step in seconds
+     * @param c Scratch space for collisions
+     */
+    private void integrate(int i, double seconds, Contact c) {
+        final int cell = Level.CELL_SIZE;
+        int startX = posX[i];
+        int startY = posY[i];
+        double dist;
+        int step;
+
+        // 1. apply drag
+        velX[i] *= 1 - dragX[i] * seconds;
+        velY[i] *= 1 - dragY[i] * seconds;
+
+        // 2. apply forces
+        velX[i] += (forceX[i] + gravityX) * seconds;
+        velY[i] += (forceY[i] + gravityY) * seconds;
+        forceX[i] = 0;
+        forceY[i] = 0;
+
+        // 3. move x, carrying the sub-pixel part to the next step
+        dist = velX[i] * seconds + remX[i];
+        step = (int) dist;
+        remX[i] = dist - step;
+        if (step != 0 && level.sweep(posX[i] + boxX[i], posY[i] + boxY[i],
+                boxW[i], boxH[i], step, 0, solid, c)) {
+            //stop flush against the brick
+            if (step > 0) {
+                posX[i] = c.col * cell - boxW[i] - boxX[i];
+            } else {
+                posX[i] = (c.col + 1) * cell - boxX[i];
+            }
+            velX[i] = 0;
+            remX[i] = 0;
+        } else {
+            posX[i] += step;
+        }
+
+        // 4. move y, carrying the sub-pixel part to the next step
+        dist = velY[i] * seconds + remY[i];
+        step = (int) dist;
+        remY[i] = dist - step;
+        if (step != 0 && level.sweep(posX[i] + boxX[i], posY[i] + boxY[i],
+                boxW[i], boxH[i], 0, step, solid, c)) {
+            if (step > 0) {
+                posY[i] = c.row * cell - boxH[i] - boxY[i];
+            } else {
+                posY[i] = (c.row + 1) * cell - boxY[i];
+                onGround[i] = true;
+            }
+            velY[i] = 0;
+            remY[i] = 0;
+        } else if (step != 0) {
+            posY[i] += step;
+            //only leave the ground by actually moving. Small steps can
+            //round to 0 pixels while resting on a brick.
+            onGround[i] = false;
+        }
+
+        bodies[i].savePos();
+        bodies[i].move(posX[i] - startX, posY[i] - startY);
+        bodies[i].setOnGround(onGround[i]);
+    }
+
+    /**
+     * Make room for more bodies.
+     * @param capacity The new number of bodies the arrays can hold.
+     */
+    private void grow(int capacity) {
+        bodies = Arrays.copyOf(bodies, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        remX = Arrays.copyOf(remX, capacity);
+        remY = Arrays.copyOf(remY, capacity);
+        velX = Arrays.copyOf(velX, capacity);
+        velY = Arrays.copyOf(velY, capacity);
+        forceX = Arrays.copyOf(forceX, capacity);
+        forceY = Arrays.copyOf(forceY, capacity);
+        dragX = Arrays.copyOf(dragX, capacity);
+        dragY = Arrays.copyOf(dragY, capacity);
+        boxX = Arrays.copyOf(boxX, capacity);
+        boxY = Arrays.copyOf(boxY, capacity);
+        boxW = Arrays.copyOf(boxW, capacity);
+        boxH = Arrays.copyOf(boxH, capacity);
+        onGround = Arrays.copyOf(onGround, capacity);
+        gridId = Arrays.copyOf(gridId, capacity);
+    }
+}
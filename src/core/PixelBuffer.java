@@ -0,0 +1,180 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Rectangle;
+
+/**
+ * <p>A flat, int-packed ARGB pixel buffer.  Every pixel is stored in one
+ * contiguous int array, row by row, so walking a row is a linear
+ * walk through memory.</p>
+ * <p>Like the rest of the pixel pipeline, 0,0 is the bottom left
+ * with +Y going up.  Row y starts at index y * width.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class PixelBuffer {
+    /** Bit-shift value for alpha in packed colors. */
+    public static final byte A_SHIFT = 24;
+    /** Bit-shift value for red in packed colors. */
+    public static final byte R_SHIFT = 16;
+    /** Bit-shift value for green in packed colors. */
+    public static final byte G_SHIFT = 8;
+    /** Bit-shift value for blue in packed colors. */
+    public static final byte B_SHIFT = 0;
+    /** Mask for the color channels (everything but alpha). */
+    public static final int RGB_MASK = 0x00FFFFFF;
+    /** Mask for the alpha channel. */
+    public static final int ALPHA_MASK = 0xFF000000;
+
+    /** Width of the buffer in pixels. */
+    private final int width;
+    /** Height of the buffer in pixels. */
+    private final int height;
+    /** The packed ARGB pixels, bottom row first. */
+    private final int[] data;
+
+    /**
+     * Constructor for a new, fully transparent buffer.
+     * @param width The width in pixels
+     * @param height The height in pixels
+     */
+    public PixelBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        data = new int[width * height];
+    }
+
+    /**
+     * Get the width of the buffer.
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the buffer.
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the backing array.  Row y starts at y * getWidth().
+     * @return A handle to the packed pixels (not a copy).
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    /**
+     * Get the array index of the given pixel.
+     * @param x The x coordinate (right)
+     * @param y The y coordinate (up)
+     * @return the index into getData()
+     */
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Get a single packed pixel.
+     * @param x The x coordinate (right)
+     * @param y The y coordinate (up)
+     * @return the packed ARGB color
+     */
+    public int get(int x, int y) {
+        return data[y * width + x];
+    }
+
+    /**
+     * Set a single packed pixel.
+     * @param x The x coordinate (right)
+     * @param y The y coordinate (up)
+     * @param argb the packed ARGB color
+     */
+    public void set(int x, int y, int argb) {
+        data[y * width + x] = argb;
+    }
+
+    /**
+     * Get the area covered by this buffer, placed at the origin.
+     * @return A new rectangle of the buffer's size.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(0, 0, width, height);
+    }
+
+    /**
+     * Copy a block of pixels from another buffer into this one,
+     * one row at a time.  The block must fit in both buffers.
+     * @param src The buffer to copy from
+     * @param srcX The left edge of the block in src
+     * @param srcY The bottom edge of the block in src
+     * @param dstX The left edge of the block in this buffer
+     * @param dstY The bottom edge of the block in this buffer
+     * @param w The width of the block
+     * @param h The height of the block
+     */
+    public void copy(PixelBuffer src, int srcX, int srcY,
+                     int dstX, int dstY, int w, int h) {
+        int[] from = src.data;
+        int srcW = src.width;
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(from, (srcY + row) * srcW + srcX,
+                             data, (dstY + row) * width + dstX,
+                             w);
+        }
+    }
+
+    /**
+     * Pack four 0:1 channels into an ARGB int, clamping each channel.
+     * @param a alpha
+     * @param r red
+     * @param g green
+     * @param b blue
+     * @return A packed ARGB color.
+     */
+    public static int pack(double a, double r, double g, double b) {
+        return (toByte(a) << A_SHIFT)
+             | (toByte(r) << R_SHIFT)
+             | (toByte(g) << G_SHIFT)
+             | (toByte(b) << B_SHIFT);
+    }
+
+    /**
+     * Convert a 0:1 channel into a clamped 0:255 value.
+     * @param channel The channel intensity
+     * @return the channel as an unsigned byte value.
+     */
+    private static int toByte(double channel) {
+        int value = (int) (channel * Util.B_MAX);
+        return Math.max(0, Math.min(value, Util.B_MAX));
+    }
+
+    /**
+     * Add the color channels of two packed pixels, saturating each
+     * channel at 255.  The alpha of the first pixel is kept.
+     * @param dst The base color (alpha is preserved)
+     * @param src The color to add
+     * @return The sum of the two colors.
+     */
+    public static int addRGB(int dst, int src) {
+        int r = ((dst >> R_SHIFT) & Util.B_MAX)
+              + ((src >> R_SHIFT) & Util.B_MAX);
+        int g = ((dst >> G_SHIFT) & Util.B_MAX)
+              + ((src >> G_SHIFT) & Util.B_MAX);
+        int b = (dst & Util.B_MAX) + (src & Util.B_MAX);
+        if (r > Util.B_MAX) {
+            r = Util.B_MAX;
+        }
+        if (g > Util.B_MAX) {
+            g = Util.B_MAX;
+        }
+        if (b > Util.B_MAX) {
+            b = Util.B_MAX;
+        }
+        return (dst & ALPHA_MASK) | (r << R_SHIFT) | (g << G_SHIFT) | b;
+    }
+}
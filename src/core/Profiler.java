@@ -0,0 +1,193 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Records how long each Stage of a frame takes, in nanoseconds.</p>
+ * <p>Each stage keeps its most recent samples in a ring buffer. Writing
+ * a sample is one atomic increment and one array store, so the game
+ * thread and the paint thread can both record without locking, and
+ * the overlay can read while they write.</p>
+ * <p>Usage: <code>long t = Profiler.start(); ...;
+ * Profiler.end(Stage.simulate, t);</code></p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Profiler {
+    /** Samples kept per stage. Must be a power of 2. */
+    private static final int SAMPLES = 256;
+    /** Nanoseconds per microsecond. */
+    private static final double NS_PER_US = 1000.0;
+    /** The median. */
+    private static final double P50 = 0.5;
+    /** The 99th percentile. */
+    private static final double P99 = 0.99;
+
+    /** The recent samples of each stage, indexed by ordinal. */
+    private static final Ring[] RINGS = new Ring[Stage.values().length];
+    /** Whether to record anything at all. */
+    private static volatile boolean enabled = true;
+
+    static {
+        for (int i = 0; i < RINGS.length; i++) {
+            RINGS[i] = new Ring();
+        }
+    }
+
+    /**
+     * Static class; no instances.
+     */
+    private Profiler() {
+    }
+
+    /**
+     * Turn recording on or off.  When off, start and end cost
+     * next to nothing.
+     * @param on true to record timings.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Check if timings are being recorded.
+     * @return true if recording.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Mark the start of a timed stage.
+     * @return The time to pass to end().
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Mark the end of a timed stage and record how long it took.
+     * @param stage The stage that finished.
+     * @param start The value start() returned.
+     */
+    public static void end(Stage stage, long start) {
+        if (enabled) {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record a timing measured elsewhere.
+     * @param stage The stage that was timed.
+     * @param nanos How long it took in nanoseconds.
+     */
+    public static void record(Stage stage, long nanos) {
+        if (enabled) {
+            RINGS[stage.ordinal()].add(nanos);
+        }
+    }
+
+    /**
+     * Get a percentile of the recent samples of a stage.
+     * @param stage The stage to inspect.
+     * @param fraction Which percentile (0.5 is the median, 0.99 is p99).
+     * @return The percentile in nanoseconds, or 0 if nothing is recorded.
+     */
+    public static long percentile(Stage stage, double fraction) {
+        long[] sorted = RINGS[stage.ordinal()].snapshot();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int i = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+    }
+
+    /**
+     * Forget all recorded samples.
+     */
+    public static void reset() {
+        for (Ring ring : RINGS) {
+            ring.clear();
+        }
+    }
+
+    /**
+     * Draw the median and p99 of each stage, in microseconds.
+     * @param page The graphics context
+     * @param x The left edge of the overlay
+     * @param y The baseline of the first line
+     */
+    public static void drawOverlay(Graphics page, int x, int y) {
+        final int lineHeight = 14;
+        final int tab = 70;
+        page.setColor(Color.yellow);
+        page.drawString("stage", x, y);
+        page.drawString("p50 us", x + tab, y);
+        page.drawString("p99 us", x + tab * 2, y);
+        for (Stage stage : Stage.values()) {
+            y += lineHeight;
+            page.drawString(stage.getLabel(), x, y);
+            page.drawString(format(percentile(stage, P50)), x + tab, y);
+            page.drawString(format(percentile(stage, P99)), x + tab * 2, y);
+        }
+    }
+
+    /**
+     * Format nanoseconds as microseconds with one decimal place.
+     * @param nanos The time to format.
+     * @return The formatted time.
+     */
+    private static String format(long nanos) {
+        return String.format("%.1f", nanos / NS_PER_US);
+    }
+
+    /**
+     * <p>A fixed-size, lock-free ring of samples. Once full, the oldest
+     * sample is overwritten.</p>
+     */
+    private static class Ring {
+        /** The samples. */
+        private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+        /** How many samples have ever been written. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Add a sample, replacing the oldest if full.
+         * @param value The sample to add.
+         */
+        void add(long value) {
+            int i = count.getAndIncrement() & (SAMPLES - 1);
+            samples.lazySet(i, value);
+        }
+
+        /**
+         * Copy the current samples.
+         * @return A new array of up to SAMPLES samples, in no order.
+         */
+        long[] snapshot() {
+            int n = count.get();
+            //count wraps negative after 2^31 samples; then the ring is full
+            if (n < 0 || n > SAMPLES) {
+                n = SAMPLES;
+            }
+            long[] result = new long[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = samples.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * Forget every sample.
+         */
+        void clear() {
+            count.set(0);
+        }
+    }
+}
@@ -5,39 +5,109 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import core.effects.Particles;
 import core.world.Level;
 
 /**
  * <p>This class handles rendering and translates pixel arrays
  * into images.</p>
+ * <p>The static background (level plus static props) is composited in 
+ * square chunks.  Chunks are built when they come near the camera and 
+ * the least recently drawn ones are dropped once there are more than 
+ * the screen needs.</p>
+ * <p>Lights are not part of the background.  Each frame, the lights 
+ * that reach the screen are added up in a light buffer, which is then
+ * added over the background, so lights can move, flicker and switch 
+ * on and off without recompositing any chunks.</p>
+ * <p>Static props and lights are kept in spatial grids, so drawing 
+ * only looks at the ones near the screen, however many the level 
+ * has.</p>
+ * <p>Dynamic props, particles and the lit lights are drawn from a 
+ * Snapshot, which capture fills in on the game thread, so they can be 
+ * drawn on another thread while the game moves them on.  Only the 
+ * game thread touches the lights themselves.</p>
  * @author Joe Pelz, Set A, A00893517
  * @version 1.0
  */
 public class Renderer {
+    /** Width and height of a background chunk, in tiles. */
+    public static final int CHUNK_TILES = 16;
+    /** Width and height of a background chunk, in pixels. */
+    public static final int CHUNK_SIZE = CHUNK_TILES * Level.CELL_SIZE;
+    /** How far outside the screen to start building chunks (pixels). */
+    private static final int PREFETCH = Level.CELL_SIZE * 4;
+    /** Extra chunks to keep cached beyond what covers the screen. */
+    private static final int CHUNK_SLACK = 3;
+    
     /** If stale = true, the image needs to be redrawn
      * (because something has changed). */
-    private boolean stale = true;
+    private volatile boolean stale = true;
     
     /** Store the level. */
     private Level world;
-    /** Store the lights and other static props. */
-    private ArrayList<Drawable> staticProps = new ArrayList<Drawable>();
+    /** Store static props, by area, to find the ones in a region. */
+    private SpatialGrid<Drawable> staticProps = 
+            new SpatialGrid<Drawable>(CHUNK_SIZE);
+    /** Store lights, by area, to find the ones that reach the screen. */
+    private SpatialGrid<Drawable> lights = 
+            new SpatialGrid<Drawable>(CHUNK_SIZE);
+    /** Scratch list of the props a query found, for drawing. */
+    private ArrayList<Drawable> found = new ArrayList<Drawable>();
+    /** Scratch list of the lights a query found, for capturing. */
+    private ArrayList<Drawable> lit = new ArrayList<Drawable>();
+    /** The pixels of the drawn static props being composited. */
+    private ArrayList<PixelBuffer> layers = new ArrayList<PixelBuffer>();
+    /** Where each of the layers goes, in world pixels. */
+    private ArrayList<Rectangle> layerBounds = new ArrayList<Rectangle>();
     /** Store dynamic props. */
     private ArrayList<Drawable> dynProps = new ArrayList<Drawable>();
+    /** The particles drawn over the dynamic props. May be null. */
+    private Particles particles;
+    /** Snapshot for draws that capture and draw on the same thread. */
+    private final Snapshot live = new Snapshot();
+
+    /** How many chunks to keep before evicting. */
+    private int chunkLimit = CHUNK_SLACK * CHUNK_SLACK;
+    /** Number of chunk columns in the level. */
+    private int chunkCols;
+    /** Composited background chunks, in least recently used order. */
+    private LinkedHashMap<Integer, Chunk> chunks = 
+            new LinkedHashMap<Integer, Chunk>(16, 0.75f, true) {
+                /** Unique version of this map. */
+                private static final long serialVersionUID = 
+                        -2391748239284957812L;
 
-    /** All static layers mixed. 0,0 is bottom left. */
-    private double[][][] precomp;
-    /** Final output image. 0,0 is top left. */
-    private BufferedImage finComp;
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, Chunk> eldest) {
+                    return size() > chunkLimit;
+                }
+            };
+    /** Regions waiting to be recomposited on the next draw. */
+    private DirtyRegion dirty = new DirtyRegion();
     /** Screen size image. */
     private BufferedImage screen;
+    /** The screen's pixels, top row first. */
+    private int[] screenData;
     /** Graphics handle for the screen. */
     private Graphics2D gScreen;
+    /** Where dynamic props' images are drawn from. May be null. */
+    private SpriteAtlas atlas;
+    /** The sum of this frame's lights, one pixel per screen pixel, 
+     * bottom row first.  All zero between frames. */
+    private PixelBuffer lightBuf;
+    /** Time spent compositing chunks since update() began, in ns. */
+    private long compTime;
+    /** Time spent refreshing chunk images since update() began, in ns. */
+    private long imageTime;
     /**
      * Constructor for an empty renderer.
      */
@@ -53,11 +123,27 @@ public class Renderer {
     
     /**
      * Tells the renderer that a region of the image needs recalculating.
+     * Nothing is redrawn here; the region is merged into the dirty set
+     * and recomposited once, just before the next draw.
      * @param r The region that needs to be redrawn.
      */
     public void invalidate(Rectangle r) {
-        updateComp(r);
-        updateImage(r);
+        dirty.add(r);
+    }
+    
+    /**
+     * Recomposite every pending dirty region.
+     * Only chunks that are currently built are touched; the rest will 
+     * pick up the change when they are next built.
+     */
+    private void flushDirty() {
+        for (Rectangle r : dirty.drain()) {
+            for (Chunk chunk : chunks.values()) {
+                if (chunk.getBounds().intersects(r)) {
+                    rebuild(chunk, r);
+                }
+            }
+        }
     }
     
     /**
@@ -66,287 +152,615 @@ public class Renderer {
      */
     public void setWorld(Level w) {
         world = w;
-        finComp = new BufferedImage(
-                w.getBounds().width, 
-                w.getBounds().height, 
-                BufferedImage.TYPE_4BYTE_ABGR);
-        precomp = new double[w.getBounds().width]
-                            [w.getBounds().height]
-                            [Util.CHANNELS];
+        chunkCols = (w.getBounds().width + CHUNK_SIZE - 1) / CHUNK_SIZE;
         stale = true;
     }
+    /**
+     * Give the renderer the sprite atlas of the texture pack that 
+     * dynamic props get their images from.
+     * @param spriteAtlas The atlas, e.g. TexturePack.getAtlas()
+     */
+    public void setAtlas(SpriteAtlas spriteAtlas) {
+        atlas = spriteAtlas;
+    }
     /**
      * Add a static prop to the world renderer.
      * @param prop The prop to add to the world.
      */
     public void addStaticProp(Drawable prop) {
-        staticProps.add(prop);
+        staticProps.add(prop, prop.getBounds());
     }
     /**
-     * Add a static prop to the world renderer.
+     * Add a light to the world renderer.  Its pixels are added to 
+     * whatever is under them, every frame, while it is drawn; it can 
+     * change its pixels at any time, but must stay where it is.
+     * @param light The light to add to the world.
+     */
+    public void addLight(Drawable light) {
+        lights.add(light, light.getBounds());
+    }
+    /**
+     * Add a dynamic prop to the world renderer.
      * @param prop The prop to add to the world.
      */
     public void addDynProp(Drawable prop) {
         dynProps.add(prop);
     }
+    /**
+     * Give the renderer a pool of particles to draw over the dynamic 
+     * props.  They are drawn from the sprite atlas, so it must be set.
+     * @param pool The particles to capture.
+     */
+    public void setParticles(Particles pool) {
+        particles = pool;
+    }
 
     /**
-     * Update the final pixel array comp of the background.
-     * This includes the level and static props.
+     * Get the given chunk, compositing it first if it isn't cached.
+     * @param col The chunk column
+     * @param row The chunk row
+     * @return The composited chunk.
      */
-    private void updateComp() {
-//        System.out.println("Updating everything.");
-        double[][][] worldP = world.getPixels();
-        //convert array from double[] to int
-        for (int x = 0; x < worldP.length; x++) {
-            for (int y = 0; y < worldP[0].length; y++) {
-                for (int ch = 0; ch < Util.CHANNELS; ch++) {
-                    precomp[x][y][ch] = worldP[x][y][ch];
-                }
-            }
+    private Chunk getChunk(int col, int row) {
+        Integer key = row * chunkCols + col;
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            Rectangle region = new Rectangle(
+                    col * CHUNK_SIZE, 
+                    row * CHUNK_SIZE, 
+                    CHUNK_SIZE, 
+                    CHUNK_SIZE).intersection(world.getBounds());
+            chunk = new Chunk(region);
+            rebuild(chunk, region);
+            chunks.put(key, chunk);
         }
+        return chunk;
+    }
 
-        for (Drawable d : staticProps) {
-//            System.out.println("adding light at " + ((Light) d).getPos());
-            if (d.isDrawn()) {
-                add(d.getPixels(), d.getBounds());
-            }
-        }
-        stale = false;
+    /**
+     * Recomposite a region of a chunk and copy it into the chunk's image,
+     * adding the time taken to the running totals for this draw.
+     * @param chunk The chunk to rebuild.
+     * @param region The region to rebuild, in world pixels.
+     */
+    private void rebuild(Chunk chunk, Rectangle region) {
+        long t = Profiler.start();
+        updateComp(chunk, region);
+        long t2 = Profiler.start();
+        chunk.updateImage(region);
+        long t3 = Profiler.start();
+        compTime += t2 - t;
+        imageTime += t3 - t2;
     }
     
     /**
-     * Update a specific region in the final pixel comp.
-     * @param bounds The region to update.
+     * Update a specific region of a chunk's pixel comp.
+     * This includes the level and static props.  Big regions are 
+     * composited in bands, in parallel.
+     * @param chunk The chunk to update.
+     * @param bounds The region to update, in world pixels.
      */
-    private void updateComp(Rectangle bounds) {
-//        System.out.println("Updating region.");
-        double[][][] worldP = world.getPixels();
-        //convert array from double[] to int
-        int left   = Math.max(0, bounds.x);
-        int bottom = Math.max(0, bounds.y);
-        int right  = Math.min(worldP.length,    bounds.x + bounds.width);
-        int top    = Math.min(worldP[0].length, bounds.y + bounds.height);
-        
-        for (int x = left; x < right; x++) {
-            for (int y = bottom; y < top; y++) {
-                for (int ch = 0; ch < Util.CHANNELS; ch++) {
-                    precomp[x][y][ch] = worldP[x][y][ch];
-                }
-            }
+    private void updateComp(final Chunk chunk, Rectangle bounds) {
+        final Rectangle region = bounds.intersection(chunk.getBounds());
+        if (region.isEmpty()) {
+            return;
         }
-        
-        for (Drawable d : staticProps) {
-//            System.out.println("adding light at " + ((Light) d).getPos());
-            if (d.isDrawn()) {
-                add(d.getPixels(), d.getBounds(), bounds);
+        //neither the grid nor the props are safe to use from the bands,
+        //so find what to draw here, and the bands only read that
+        Drawable prop;
+        found.clear();
+        staticProps.query(region, found);
+        for (int i = 0; i < found.size(); i++) {
+            prop = found.get(i);
+            if (prop.isDrawn()) {
+                layers.add(prop.getPixels());
+                layerBounds.add(prop.getBounds());
             }
         }
+        Bands.run(new Bands.Kernel() {
+            @Override
+            public void run(int bottom, int top) {
+                composite(chunk, new Rectangle(region.x, bottom, 
+                                               region.width, top - bottom));
+            }
+        }, region.y, region.y + region.height, region.width);
+        layers.clear();
+        layerBounds.clear();
     }
 
     /**
-     * Merge a layer into the background by adding it. 
-     * @param pixels The pixel array to merge
-     * @param bound The global coordinates of those pixels.
+     * Composite the level and the layers over a band of a chunk.  Only 
+     * reads the level and the layers, and only writes the band's rows,
+     * so bands can be done at once.
+     * @param chunk The chunk to update.
+     * @param band The region to update, in world pixels, inside the 
+     * chunk.
      */
-    private void add(double[][][] pixels, Rectangle bound) {
-        Rectangle worldBounds = world.getBounds();
-        int left   = Math.max(bound.x, worldBounds.x);
-        int bottom = Math.max(bound.y, worldBounds.y);
-        int right  = (Math.min(bound.x + bound.width,  
-                               worldBounds.x + worldBounds.width));
-        int top    = (Math.min(bound.y + bound.height, 
-                               worldBounds.y + worldBounds.height));
-        for (int x = left; x < right; x++) {
-            for (int y = bottom; y < top; y++) {
-                precomp[x][y][Util.R] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.R];
-                precomp[x][y][Util.G] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.G];
-                precomp[x][y][Util.B] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.B];
-            }
+    private void composite(Chunk chunk, Rectangle band) {
+        Rectangle origin = chunk.getBounds();
+        world.paintTiles(chunk.getPixels(), origin.x, origin.y, band);
+        for (int i = 0; i < layers.size(); i++) {
+            add(chunk, layers.get(i), layerBounds.get(i), band);
         }
     }
-    
+
     /**
-     * Merge a layer into the background by adding it, 
+     * Merge a layer into a chunk by adding it, 
      * but only over a specific region. 
-     * @param pixels The pixel array to merge
+     * @param chunk  The chunk to draw into
+     * @param pixels The pixel buffer to merge
      * @param bound  The global coordinates of those pixels.
      * @param region The specific region to exclusively draw on. 
      */
-    private void add(double[][][] pixels, Rectangle bound, Rectangle region) {
-        Rectangle worldBounds = world.getBounds();
-        int left   = Math.max(bound.x, worldBounds.x);
-        int bottom = Math.max(bound.y, worldBounds.y);
-        int right  = (Math.min(bound.x + bound.width,  
-                               worldBounds.x + worldBounds.width));
-        int top    = (Math.min(bound.y + bound.height,
-                               worldBounds.y + worldBounds.height));
+    private void add(Chunk chunk, PixelBuffer pixels, 
+                     Rectangle bound, Rectangle region) {
+        Rectangle chunkBounds = chunk.getBounds();
+        int left   = Math.max(bound.x, region.x);
+        int bottom = Math.max(bound.y, region.y);
+        int right  = Math.min(bound.x + bound.width,  
+                              region.x + region.width);
+        int top    = Math.min(bound.y + bound.height,
+                              region.y + region.height);
 
-        //only update the relevant region
-        left   = Math.max(left,   region.x);
-        right  = Math.min(right,  region.x + region.width);
-        bottom = Math.max(bottom, region.y);
-        top    = Math.min(top,    region.y + region.height);
+        //only update the part inside the chunk
+        left   = Math.max(left,   chunkBounds.x);
+        right  = Math.min(right,  chunkBounds.x + chunkBounds.width);
+        bottom = Math.max(bottom, chunkBounds.y);
+        top    = Math.min(top,    chunkBounds.y + chunkBounds.height);
         
-        for (int x = left; x < right; x++) {
-            for (int y = bottom; y < top; y++) {
-                precomp[x][y][Util.R] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.R];
-                precomp[x][y][Util.G] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.G];
-                precomp[x][y][Util.B] += pixels[x - bound.x]
-                                               [y - bound.y]
-                                               [Util.B];
+        PixelBuffer precomp = chunk.getPixels();
+        int[] dest = precomp.getData();
+        int[] src = pixels.getData();
+        int destW = precomp.getWidth();
+        int srcW = pixels.getWidth();
+        int di;
+        int si;
+        for (int y = bottom; y < top; y++) {
+            di = (y - chunkBounds.y) * destW + (left - chunkBounds.x);
+            si = (y - bound.y) * srcW + (left - bound.x);
+            for (int x = left; x < right; x++, di++, si++) {
+                dest[di] = PixelBuffer.addRGB(dest[di], src[si]);
             }
         }
     }
     
-
     /**
-     * Transfer the final colors from the array to the buffered image.  
-     * This is the point where we switch coordinate systems.
-     * Up until now 0,0 has been the bottom left, with +Y going up.
-     * After this (in finComp) 0,0 will be the top left, with +Y going down.
+     * Bring the composited background up to date for a view: apply 
+     * any pending invalidations, then build the chunks that cover 
+     * the view or are about to come into it.
+     * @param view The visible region of the world, in world pixels.
      */
-    private void updateImage() {
-        Util.pixelsToImage(precomp, finComp);
+    public void update(Rectangle view) {
+        compTime = 0;
+        imageTime = 0;
+        if (stale) {
+            //everything gets rebuilt, so pending regions are moot.
+            stale = false;
+            dirty.clear();
+            chunks.clear();
+        } else if (!dirty.isEmpty()) {
+            flushDirty();
+        }
+        chunkLimit = (view.width  / CHUNK_SIZE + CHUNK_SLACK)
+                   * (view.height / CHUNK_SIZE + CHUNK_SLACK);
+        
+        Rectangle near = new Rectangle(view);
+        near.grow(PREFETCH, PREFETCH);
+        near = near.intersection(world.getBounds());
+        if (near.isEmpty()) {
+            return;
+        }
+        int colMax = (near.x + near.width - 1) / CHUNK_SIZE;
+        int rowMax = (near.y + near.height - 1) / CHUNK_SIZE;
+        for (int row = near.y / CHUNK_SIZE; row <= rowMax; row++) {
+            for (int col = near.x / CHUNK_SIZE; col <= colMax; col++) {
+                getChunk(col, row);
+            }
+        }
     }
     
     /**
-     * Transfer the final colors from the pixel array to the buffered image,  
-     * but only update a specific subset rectangle.
-     * This is the point where we switch coordinate systems.
-     * Up until now 0,0 has been the bottom left, with +Y going up.
-     * After this (in finComp) 0,0 will be the top left, with +Y going down.
-     * @param region The particular region of the image to update. 
+     * Actually draw the image to screen, 
+     * with dynamic props at their current positions.
+     * @param g The graphics buffer to draw into
+     * @param comp The component for sizing and scaling purposes
+     * @param offsetX The camera position, or world offset, in X
+     * @param offsetY The camera position, or world offset, in Y
      */
-    private void updateImage(Rectangle region) {
-        Util.pixelsToImage(precomp, finComp, region);
+    public void draw(Graphics g, Component comp, int offsetX, int offsetY) {
+        draw(g, comp, offsetX, offsetY, 1.0);
     }
     
     /**
-     * Actually draw the image to screen.
+     * Actually draw the image to screen, capturing the dynamic props 
+     * and particles first.  Only for use on the thread that moves them.
      * @param g The graphics buffer to draw into
      * @param comp The component for sizing and scaling purposes
      * @param offsetX The camera position, or world offset, in X
      * @param offsetY The camera position, or world offset, in Y
+     * @param alpha How far between the last two simulation steps to 
+     * draw dynamic props (0 = previous, 1 = current).
      */
-    public void draw(Graphics g, Component comp, int offsetX, int offsetY) {
+    public void draw(Graphics g, Component comp, 
+                     int offsetX, int offsetY, double alpha) {
+        live.camX = offsetX;
+        live.camY = offsetY;
+        live.alpha = alpha;
+        live.viewW = comp.getWidth();
+        live.viewH = comp.getHeight();
+        capture(live, alpha);
+        draw(g, comp, live);
+    }
 
-        if (stale) {
-            updateComp();
-            updateImage();
+    /**
+     * Copy the dynamic props, particles and lit lights that reach the 
+     * view into a snapshot, for drawing later, maybe on another thread.
+     * The rest are left out, so a frame costs what is on screen.  
+     * Particles are only copied once there is an atlas to draw them 
+     * with.  Call from the thread that moves them.
+     * @param snap The snapshot to fill in.  Its camera and view size 
+     * aren't touched, but say what to copy.
+     * @param alpha How far between the last two simulation steps to 
+     * put dynamic props (0 = previous, 1 = current).
+     */
+    public void capture(Snapshot snap, double alpha) {
+        int left = snap.camX;
+        int bottom = snap.camY;
+        int right = left + snap.viewW;
+        int top = bottom + snap.viewH;
+        Rectangle r;
+        PixelBuffer pixels;
+        Drawable light;
+        int x;
+        int y;
+        snap.clear();
+        for (Drawable prop : dynProps) {
+            r = prop.getDrawBounds(alpha);
+            if (r.x < right && r.x + r.width > left
+                    && r.y < top && r.y + r.height > bottom) {
+                snap.addProp(r.x, r.y, r.width, r.height, 
+                             prop.getImage(), prop.getPixels());
+            }
         }
-        
-        
-        Rectangle bounds = world.getBounds();
-        
+        lit.clear();
+        lights.query(snap.camX, snap.camY, snap.viewW, snap.viewH, lit);
+        for (int i = 0; i < lit.size(); i++) {
+            light = lit.get(i);
+            if (!light.isDrawn()) {
+                continue;
+            }
+            //the light keeps this buffer as is; a change makes a new one
+            r = light.getDrawBounds(alpha);
+            pixels = light.getPixels();
+            snap.addLight(r.x, r.y, r.width, r.height, pixels);
+        }
+        lit.clear();
+        if (particles == null || atlas == null) {
+            return;
+        }
+        for (int i = 0; i < particles.size(); i++) {
+            //drawn centered on x, y, as big as its sprite
+            x = (int) particles.getX(i);
+            y = (int) particles.getY(i);
+            r = atlas.getRegion(particles.getSprite(i));
+            if (x - r.width / 2 < right && x - r.width / 2 + r.width > left
+                    && y - r.height / 2 < top 
+                    && y - r.height / 2 + r.height > bottom) {
+                snap.addParticle(x, y, particles.getSprite(i));
+            }
+        }
+    }
+
+    /**
+     * Actually draw the image to screen.
+     * @param g The graphics buffer to draw into
+     * @param comp The component for sizing and scaling purposes
+     * @param snap Where the camera, dynamic props and particles are.
+     * Only read.
+     */
+    public void draw(Graphics g, Component comp, Snapshot snap) {
+        int offsetX = snap.camX;
+        int offsetY = snap.camY;
+
         if (screen == null 
                 || screen.getWidth() != comp.getWidth() 
                 || screen.getHeight() != comp.getHeight()) {
             screen = new BufferedImage(
                     comp.getWidth(), 
                     comp.getHeight(), 
-                    BufferedImage.TYPE_4BYTE_ABGR);
+                    BufferedImage.TYPE_INT_RGB);
+            screenData = ((DataBufferInt) screen.getRaster()
+                                                .getDataBuffer()).getData();
             gScreen = screen.createGraphics();
+            lightBuf = new PixelBuffer(comp.getWidth(), comp.getHeight());
         }
-
+        
+        Rectangle view = new Rectangle(offsetX, offsetY, 
+                screen.getWidth(), screen.getHeight());
+        update(view);
         
         //black out the background
         gScreen.setPaint(Color.black);
         gScreen.fillRect(0, 0, screen.getWidth(), screen.getHeight());
-        //draw bg that covers screen
-        gScreen.drawImage(finComp, 
-                bounds.x - offsetX, 
-                bounds.y - bounds.height + offsetY + comp.getHeight(),
-                null);
-
         
-        mergeDynProps(offsetX, offsetY);
+        //draw the chunks that cover the screen
+        long t = Profiler.start();
+        Rectangle visible = view.intersection(world.getBounds());
+        if (!visible.isEmpty()) {
+            int colMax = (visible.x + visible.width - 1) / CHUNK_SIZE;
+            int rowMax = (visible.y + visible.height - 1) / CHUNK_SIZE;
+            Chunk chunk;
+            Rectangle cb;
+            for (int row = visible.y / CHUNK_SIZE; row <= rowMax; row++) {
+                for (int col = visible.x / CHUNK_SIZE; 
+                        col <= colMax; 
+                        col++) {
+                    chunk = getChunk(col, row);
+                    cb = chunk.getBounds();
+                    gScreen.drawImage(chunk.getImage(), 
+                            cb.x - offsetX, 
+                            screen.getHeight() + offsetY 
+                                - cb.y - cb.height,
+                            null);
+                }
+            }
+        }
+        long blitTime = Profiler.start() - t;
+        Profiler.record(Stage.updateComp, compTime);
+        Profiler.record(Stage.updateImage, imageTime);
 
-        
+        t = Profiler.start();
+        drawLights(view, snap);
+        Profiler.end(Stage.lights, t);
+
+        t = Profiler.start();
+        mergeDynProps(snap, view);
+        drawParticles(snap, view);
+        Profiler.end(Stage.mergeDynProps, t);
+
+        t = Profiler.start();
         g.drawImage(screen, 
                 0, 
                 0,
                 null);
+        Profiler.record(Stage.blit, blitTime + Profiler.start() - t);
+    }
 
-        
+    /**
+     * Add up the lights that reach the screen in the light buffer, 
+     * then add that over the screen.  Only the area the lights cover 
+     * is touched, and it is left zeroed for the next frame.
+     * @param view The visible region of the world, in world pixels.
+     * @param snap Where the lit lights are, and their glows
+     */
+    private void drawLights(Rectangle view, Snapshot snap) {
+        int[] sum = lightBuf.getData();
+        int width = lightBuf.getWidth();
+        int height = lightBuf.getHeight();
+        //lights only shine on the level, like the background
+        Rectangle area = view.intersection(world.getBounds());
+        //the area lit so far, relative to the screen
+        int litLeft = width;
+        int litBottom = height;
+        int litRight = 0;
+        int litTop = 0;
+        PixelBuffer pixels;
+        int[] src;
+        int srcW;
+        int x0;
+        int y0;
+        int left;
+        int bottom;
+        int right;
+        int top;
+        int di;
+        int si;
+
+        if (area.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < snap.getLightCount(); i++) {
+            x0 = snap.getLightX(i);
+            y0 = snap.getLightY(i);
+            left   = Math.max(x0, area.x);
+            bottom = Math.max(y0, area.y);
+            right  = Math.min(x0 + snap.getLightWidth(i), 
+                              area.x + area.width);
+            top    = Math.min(y0 + snap.getLightHeight(i), 
+                              area.y + area.height);
+            if (left >= right || bottom >= top) {
+                continue;
+            }
+            pixels = snap.getLightPixels(i);
+            src = pixels.getData();
+            srcW = pixels.getWidth();
+            for (int y = bottom; y < top; y++) {
+                di = (y - view.y) * width + (left - view.x);
+                si = (y - y0) * srcW + (left - x0);
+                for (int x = left; x < right; x++, di++, si++) {
+                    sum[di] = PixelBuffer.addRGB(sum[di], src[si]);
+                }
+            }
+            litLeft   = Math.min(litLeft,   left   - view.x);
+            litBottom = Math.min(litBottom, bottom - view.y);
+            litRight  = Math.max(litRight,  right  - view.x);
+            litTop    = Math.max(litTop,    top    - view.y);
+        }
+        addToScreen(litLeft, litBottom, litRight, litTop);
     }
 
     /**
-     * Merge dynamic props over the background.
-     * @param offsetX camera offset in X
-     * @param offsetY camera offset in Y
+     * Add part of the light buffer over the screen, clamping each 
+     * channel, and zero that part of the light buffer.
+     * @param left The left of the part, in screen pixels
+     * @param bottom The bottom of the part, in screen pixels from the 
+     * bottom
+     * @param right The right of the part (exclusive)
+     * @param top The top of the part (exclusive)
      */
-    private void mergeDynProps(int offsetX, int offsetY) {
-        for (Drawable prop : dynProps) {
-            mergeDynProp(prop, offsetX, offsetY);
+    private void addToScreen(int left, int bottom, int right, int top) {
+        int[] sum = lightBuf.getData();
+        int width = lightBuf.getWidth();
+        int height = lightBuf.getHeight();
+        int light;
+        int li;
+        int pi;
+        for (int y = bottom; y < top; y++) {
+            li = y * width + left;
+            //the screen's rows run top down
+            pi = (height - 1 - y) * width + left;
+            for (int x = left; x < right; x++, li++, pi++) {
+                light = sum[li];
+                if (light == 0) {
+                    continue;
+                }
+                sum[li] = 0;
+                screenData[pi] = PixelBuffer.addRGB(screenData[pi], light);
+            }
+        }
+    }
+
+    /**
+     * Merge the dynamic props that are on screen over the background.
+     * @param snap Where the dynamic props are
+     * @param view The visible region of the world, in world pixels.
+     */
+    private void mergeDynProps(Snapshot snap, Rectangle view) {
+        int x;
+        int y;
+        int w;
+        int h;
+        //dynamic props move every step, so they're just tested in turn
+        for (int i = 0; i < snap.getPropCount(); i++) {
+            x = snap.getPropX(i);
+            y = snap.getPropY(i);
+            w = snap.getPropWidth(i);
+            h = snap.getPropHeight(i);
+            if (x < view.x + view.width && x + w > view.x 
+                    && y < view.y + view.height && y + h > view.y) {
+                mergeDynProp(snap.getPropImage(i), snap.getPropPixels(i), 
+                             x - view.x, y - view.y, w, h);
+            }
+        }
+    }
+    
+    /**
+     * Blend every particle over the screen, centered on its position.
+     * Those off screen are clipped away by blit.
+     * Package-private so it can be benchmarked on its own.
+     * @param snap Where the particles are
+     * @param view The visible region of the world, in world pixels.
+     */
+    void drawParticles(Snapshot snap, Rectangle view) {
+        PixelBuffer sheet;
+        Rectangle sprite;
+        if (atlas == null) {
+            return;
+        }
+        sheet = atlas.getSheet();
+        for (int i = 0; i < snap.getParticleCount(); i++) {
+            sprite = atlas.getRegion(snap.getParticleSprite(i));
+            blit(sheet, sprite.x, sprite.y, sprite.width, sprite.height, 
+                 snap.getParticleX(i) - view.x - sprite.width / 2, 
+                 snap.getParticleY(i) - view.y - sprite.height / 2, 
+                 true);
         }
     }
     
     /**
-     * Merge a dynamic prop over the background.
+     * Merge a dynamic prop over the background.  Props drawn with an 
+     * image from the texture pack are blended from the sprite atlas; 
+     * others from their own pixels.
+     * Package-private so it can be benchmarked on its own.
      * @param prop The prop to draw onto the screen
      * @param offsetX camera offset in X
      * @param offsetY camera offset in Y
+     * @param alpha interpolation between the last two simulation steps
      */
-    private void mergeDynProp(Drawable prop, int offsetX, int offsetY) {
-        byte[] pixels = ((DataBufferByte) 
-                            screen
-                            .getRaster()
-                            .getDataBuffer())
-                            .getData();
-        Rectangle r = prop.getBounds();
-        byte[] hPixels = prop.getData();
-        
-        int col = 0;
-        int row = 0;
-        double mix;
-        double mixa;
-        int pi;
-        for (int i = 0; i < hPixels.length; i += Util.CHANNELS) {
-            pi = col + ((r.x - offsetX) << 2) 
-                 +  (row * screen.getWidth() << 2)
-                 +  ((screen.getHeight() 
-                     - (r.y - offsetY + r.height)) 
-                     * screen.getWidth() << 2);
-            if (pi < 0 || pi > pixels.length) {
-                System.out.println("caught a " + pi);
-                break;
-            }
-            if (hPixels[i] == (byte) -1) {
-                pixels[pi + Util.B] = hPixels[i + Util.B];
-                pixels[pi + Util.G] = hPixels[i + Util.G];
-                pixels[pi + Util.R] = hPixels[i + Util.R];
-            } else {
-                mix = (double) (hPixels[i] & Util.B_MAX) / Util.B_MAX;
-                mixa = 1.0 - mix;
-                pixels[pi + Util.B] = (byte)
-                        ((hPixels[i + Util.B] & Util.B_MAX) * mix 
-                       + (pixels[pi + Util.B] & Util.B_MAX) * mixa);
-                pixels[pi + Util.G] = (byte)
-                        ((hPixels[i + Util.G] & Util.B_MAX) * mix 
-                       + (pixels[pi + Util.G] & Util.B_MAX) * mixa);
-                pixels[pi + Util.R] = (byte)
-                        ((hPixels[i + Util.R] & Util.B_MAX) * mix 
-                       + (pixels[pi + Util.R] & Util.B_MAX) * mixa);
-            }
-            
-            col += Util.CHANNELS;
-            if (col >= r.width * Util.CHANNELS) {
-                col = 0;
-                row++;
+    void mergeDynProp(Drawable prop, int offsetX, int offsetY, 
+                      double alpha) {
+        Rectangle r = prop.getDrawBounds(alpha);
+        mergeDynProp(prop.getImage(), prop.getPixels(), 
+                     r.x - offsetX, r.y - offsetY, r.width, r.height);
+    }
+
+    /**
+     * Merge a dynamic prop's image over the background: from the 
+     * sprite atlas if it is one of the texture pack's, else from its 
+     * pixels.
+     * @param image The prop's image, or null
+     * @param pixels The prop's pixels, or null
+     * @param x Where the prop's left edge goes, in screen pixels
+     * @param y Where the prop's bottom edge goes, in screen pixels 
+     * from the bottom
+     * @param w The width of the prop
+     * @param h The height of the prop
+     */
+    private void mergeDynProp(Image image, PixelBuffer pixels, 
+                              int x, int y, int w, int h) {
+        Rectangle sprite = null;
+        if (atlas != null && image != null) {
+            sprite = atlas.getRegion(image);
+        }
+        if (sprite != null) {
+            blit(atlas.getSheet(), sprite.x, sprite.y, 
+                 Math.min(w, sprite.width), Math.min(h, sprite.height), 
+                 x, y, true);
+        } else if (pixels != null) {
+            blit(pixels, 0, 0, 
+                 Math.min(w, pixels.getWidth()), 
+                 Math.min(h, pixels.getHeight()), 
+                 x, y, false);
+        }
+    }
+
+    /**
+     * Blend a block of pixels over the screen, a row at a time, 
+     * clipped to the screen.  Opaque pixels are copied, clear ones 
+     * skipped, and only the rest are blended.
+     * Package-private so it can be benchmarked on its own.
+     * @param src The pixels to draw
+     * @param srcX The left edge of the block in src
+     * @param srcY The bottom edge of the block in src
+     * @param w The width of the block
+     * @param h The height of the block
+     * @param x Where the block's left edge goes, in screen pixels
+     * @param y Where the block's bottom edge goes, in screen pixels 
+     * from the bottom
+     * @param premultiplied true if src's colors are premultiplied by 
+     * their alpha (as the atlas's are)
+     */
+    void blit(PixelBuffer src, int srcX, int srcY, int w, int h, 
+              int x, int y, boolean premultiplied) {
+        int[] from = src.getData();
+        int srcW = src.getWidth();
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        int left   = Math.max(0, x);
+        int bottom = Math.max(0, y);
+        int right  = Math.min(width,  x + w);
+        int top    = Math.min(height, y + h);
+        int si;
+        int di;
+        int color;
+        int a;
+        for (int row = bottom; row < top; row++) {
+            si = (srcY + row - y) * srcW + srcX + left - x;
+            //the screen's rows run top down
+            di = (height - 1 - row) * width + left;
+            for (int col = left; col < right; col++, si++, di++) {
+                color = from[si];
+                a = color >>> PixelBuffer.A_SHIFT;
+                if (a == Util.B_MAX) {
+                    screenData[di] = color;
+                } else if (a != 0) {
+                    if (!premultiplied) {
+                        color = SpriteAtlas.premultiply(color);
+                    }
+                    screenData[di] = SpriteAtlas.blend(screenData[di], 
+                                                       color);
+                }
             }
-            
-            //System.out.println("Row: " + row + "; Col: " + col);
         }
     }
 }
@@ -0,0 +1,346 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+import core.creatures.Hero;
+import core.props.Light;
+import core.world.Level;
+import core.world.TileListener;
+
+/**
+ * <p>The game rules without any drawing: physics, the camera, triggers
+ * and game over.  It doesn't touch Swing, so it can be stepped
+ * headless (java.awt.headless=true) as fast as the CPU allows, for
+ * level validation, bots, or measuring simulation speed.</p>
+ * <p>Engine owns one of these and adds drawing and input on top.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Simulation {
+    /** Default view width, for the camera. */
+    private static final int VIEW_WIDTH = 450;
+    /** Default view height, for the camera. */
+    private static final int VIEW_HEIGHT = 450;
+
+    /** gravitational force. */
+    private static final double GRAVITY = -1200;
+    /** Hero jumping speed. */
+    private static final double JUMP  = 600;
+    /** How far you can fall before game over. */
+    private static final int LOWER_BOUND = -100;
+    /** Room for this many triggers near the hero. */
+    private static final int NEARBY = 16;
+    /** Size of the cells lights are found by, in tiles. */
+    private static final int LIGHT_CELL = 8;
+
+    /** The actual world to explore. */
+    private Level world;
+    /** The hero of this adventure. */
+    private Hero hero;
+    /** The triggerable events in use. */
+    private ArrayList<Trigger> triggers = new ArrayList<Trigger>();
+    /** The triggers' areas, by tile, to find the ones near the hero. */
+    private SpatialGrid<Trigger> triggerGrid = 
+            new SpatialGrid<Trigger>(Level.CELL_SIZE);
+    /** Scratch list of the triggers near the hero. Sized up front so
+     * that filling it doesn't allocate. */
+    private ArrayList<Trigger> nearby = new ArrayList<Trigger>(NEARBY);
+    /** The lights' glows, to find the ones a changed tile shades. */
+    private SpatialGrid<Light> lightGrid = 
+            new SpatialGrid<Light>(Level.CELL_SIZE * LIGHT_CELL);
+    /** Scratch list of the lights reaching a changed tile. */
+    private ArrayList<Light> shaded = new ArrayList<Light>(NEARBY);
+    /** Who to tell when a trigger fires. May be null. */
+    private TriggerListener listener;
+    /** The forces applied by key presses. */
+    private Vector2D keyForce = new Vector2D(0.0, 0.0);
+    /** Moves the hero and every other body. */
+    private PhysicsWorld physics;
+    /** The hero's index in the physics world. */
+    private int heroBody;
+
+    /** Scratch bounds for trigger tests, so a step allocates nothing. */
+    private final Rectangle heroBounds = new Rectangle();
+    /** Scratch size for the camera. */
+    private final Dimension heroSize = new Dimension();
+
+    /** The camera's x position. */
+    private int offX;
+    /** The camera's y position. */
+    private int offY;
+    /** The camera's x position at the previous physics step. */
+    private int lastOffX;
+    /** The camera's y position at the previous physics step. */
+    private int lastOffY;
+    /** Width of the view the camera keeps the hero inside. */
+    private int viewWidth = VIEW_WIDTH;
+    /** Height of the view the camera keeps the hero inside. */
+    private int viewHeight = VIEW_HEIGHT;
+
+    /** True once the hero has fallen out of the world. */
+    private boolean over;
+    /** Number of steps simulated so far. */
+    private long ticks;
+
+    /**
+     * Constructor: places the hero at the level's start and
+     * adds a light for every dark light tile.
+     * @param level The level to play in.  Its texture pack may be null.
+     * @param player The hero.  It needs a size (image or setSize).
+     */
+    public Simulation(Level level, Hero player) {
+        world = level;
+        hero = player;
+        hero.setPos(world.getStart());
+        physics = new PhysicsWorld(world);
+        physics.setGravity(0, GRAVITY);
+        heroBody = physics.add(hero);
+
+        //init test light
+        Point[] bgLights = world.getLights();
+        Light tempLight;
+        final int cso = 15; //Cell size offset.
+        final int rRange = 100;
+        final int rMin = 75;
+
+        for (Point light : bgLights) {
+            tempLight = new Light(light.x + cso, light.y + cso, world);
+            tempLight.setRadius((short) (Math.random() * rRange + rMin));
+            triggers.add(tempLight);
+            triggerGrid.add(tempLight, 
+                    tempLight.getTriggerArea(new Rectangle()));
+            lightGrid.add(tempLight, tempLight.getBounds());
+        }
+        world.addTileListener(new Shadows());
+    }
+
+    /**
+     * Put the hero back at the start, standing still, and 
+     * clear game over. Lights and the camera are left alone.
+     */
+    public void restart() {
+        hero.setPos(world.getStart());
+        physics.reset(heroBody);
+        over = false;
+    }
+
+    /**
+     * Advance the game by one physics step.
+     * @param timeStep The length of the step in nanoseconds
+     */
+    public void step(long timeStep) {
+        long t;
+
+        //remember where the camera was, for drawing in between steps
+        lastOffX = offX;
+        lastOffY = offY;
+
+        //Physics!
+        t = Profiler.start();
+        physics.addForce(heroBody, keyForce.x, keyForce.y);
+        physics.step(timeStep);
+        Profiler.end(Stage.simulate, t);
+
+        //Move camera
+        t = Profiler.start();
+        updateCamPos();
+        Profiler.end(Stage.updateCamPos, t);
+
+        //Test 'victory' conditions
+        if (hero.getPos().y < LOWER_BOUND) {
+            over = true;
+        }
+
+        //Test world events (like touching a light)
+        t = Profiler.start();
+        nearby.clear();
+        triggerGrid.query(hero.getBounds(heroBounds), nearby);
+        testTriggers(nearby);
+        Profiler.end(Stage.testTriggers, t);
+        ticks++;
+    }
+
+    /**
+     * Tests if the hero triggers world events, like by touching a light.
+     * @param trigs A list of triggers to test, usually just the ones
+     * near the hero.
+     */
+    private void testTriggers(ArrayList<Trigger> trigs) {
+        Rectangle bounds = hero.getBounds(heroBounds);
+        Trigger trigger;
+        //indexed, since an iterator would be garbage every step
+        for (int i = 0; i < trigs.size(); i++) {
+            trigger = trigs.get(i);
+            if (trigger.isTriggered(bounds)) {
+                trigger.triggerAction();
+                if (listener != null) {
+                    listener.triggerFired(trigger);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the camera so that our hero doesn't go off-screen.
+     */
+    private void updateCamPos() {
+        final int marginX = (int) (viewWidth * 0.25);
+        final int marginTop = (int) (viewHeight * 0.2);
+        final int marginBottom = (int) (viewHeight * 0.2);
+        Point pos = hero.getPos();
+        Dimension dim = hero.getSize(heroSize);
+
+        //      update x motion
+        // If too far left
+        if (pos.x - marginX < offX) {
+            offX = pos.x - marginX;
+        //if too far right
+        } else if (pos.x + marginX > offX + viewWidth - dim.width) {
+            offX = pos.x + marginX - viewWidth + dim.width;
+        }
+        //      update y motion
+        //If too low
+        if (pos.y - marginBottom < offY) {
+            offY = pos.y - marginBottom;
+        //If too high
+        } else if (pos.y + marginTop > offY + viewHeight - dim.height) {
+            offY = pos.y + marginTop - viewHeight + dim.height;
+        }
+    }
+
+    /**
+     * Make the hero jump, if it's standing on something.
+     */
+    public void jump() {
+        if (physics.isOnGround(heroBody)) {
+            physics.setVel(heroBody, physics.getVelX(heroBody), JUMP);
+        }
+    }
+
+    /**
+     * Set the force the player is pushing the hero with.
+     * @param x The force to the right
+     * @param y The force upwards
+     */
+    public void setKeyForce(double x, double y) {
+        keyForce.set(x, y);
+    }
+
+    /**
+     * Move the camera by hand.
+     * @param x How far to move right
+     * @param y How far to move up
+     */
+    public void scrollCamera(int x, int y) {
+        offX += x;
+        offY += y;
+    }
+
+    /**
+     * Set the size of the view the camera should keep the hero inside.
+     * @param width The view width in pixels
+     * @param height The view height in pixels
+     */
+    public void setViewSize(int width, int height) {
+        viewWidth = width;
+        viewHeight = height;
+    }
+
+    /**
+     * Get the camera's x position part way between the last two steps.
+     * @param alpha 0 for the previous step, 1 for the current step.
+     * @return the camera's x position in world pixels.
+     */
+    public int getCamX(double alpha) {
+        return lastOffX + (int) Math.round((offX - lastOffX) * alpha);
+    }
+
+    /**
+     * Get the camera's y position part way between the last two steps.
+     * @param alpha 0 for the previous step, 1 for the current step.
+     * @return the camera's y position in world pixels.
+     */
+    public int getCamY(double alpha) {
+        return lastOffY + (int) Math.round((offY - lastOffY) * alpha);
+    }
+
+    /**
+     * Set who should be told when a trigger fires.
+     * @param l The listener, or null for nobody.
+     */
+    public void setTriggerListener(TriggerListener l) {
+        listener = l;
+    }
+
+    /**
+     * Get the triggers in the level.
+     * @return A handle to the list of triggers.
+     */
+    public ArrayList<Trigger> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * Get the physics world, to add more bodies to it.
+     * @return the physics world
+     */
+    public PhysicsWorld getPhysics() {
+        return physics;
+    }
+
+    /**
+     * Get the level being played.
+     * @return the level
+     */
+    public Level getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the hero.
+     * @return the hero
+     */
+    public Hero getHero() {
+        return hero;
+    }
+
+    /**
+     * Check if the game is over.
+     * @return true once the hero has fallen out of the world.
+     */
+    public boolean isOver() {
+        return over;
+    }
+
+    /**
+     * Get the number of steps simulated so far.
+     * @return the step count
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * <p>Has the lights that reach a tile cast their shadows again when
+     * the tile becomes solid or stops being solid.</p>
+     */
+    private class Shadows implements TileListener {
+        @Override
+        public void tileChanged(int col, int row, 
+                                int oldFlags, int newFlags) {
+            if (((oldFlags ^ newFlags) & Level.SOLID) == 0) {
+                return;
+            }
+            shaded.clear();
+            lightGrid.query(col * Level.CELL_SIZE, row * Level.CELL_SIZE, 
+                            Level.CELL_SIZE, Level.CELL_SIZE, shaded);
+            for (int i = 0; i < shaded.size(); i++) {
+                shaded.get(i).updateShadows();
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * <p>Everything that moves in one frame, copied out of the simulation
+ * so it can be drawn on another thread while the simulation carries
+ * on.  Positions are already interpolated between the last two
+ * physics steps.</p>
+ * <p>Snapshots are reused: the game thread fills one in and hands it
+ * over through a SnapshotBuffer, and after that nobody changes it
+ * until the reader hands it back.  The images and pixels referred to
+ * are shared sprites and light buffers, which never change once
+ * made.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Snapshot {
+    /** The camera's x position, in world pixels. */
+    public int camX;
+    /** The camera's y position, in world pixels. */
+    public int camY;
+    /** How far between the last two physics steps the frame is (0:1). */
+    public double alpha;
+    /** The frame number. */
+    public int frame;
+    /** Whether the game is over. */
+    public boolean over;
+    /** The x position of the hero's center, in world pixels. */
+    public int heroX;
+    /** The y position of the hero's center, in world pixels. */
+    public int heroY;
+    /** The width of the view, in pixels, to find what is in it. */
+    public int viewW;
+    /** The height of the view, in pixels, to find what is in it. */
+    public int viewH;
+
+    /** How many dynamic props reach the view. */
+    private int props;
+    /** The left of each dynamic prop, in world pixels. */
+    private int[] propX = new int[1];
+    /** The bottom of each dynamic prop, in world pixels. */
+    private int[] propY = new int[1];
+    /** The width of each dynamic prop, in pixels. */
+    private int[] propW = new int[1];
+    /** The height of each dynamic prop, in pixels. */
+    private int[] propH = new int[1];
+    /** The image of each dynamic prop. May hold nulls. */
+    private Image[] propImage = new Image[1];
+    /** The pixels of each dynamic prop. May hold nulls. */
+    private PixelBuffer[] propPixels = new PixelBuffer[1];
+    /** How many particles reach the view. */
+    private int particles;
+    /** The x position of each particle's center, in world pixels. */
+    private int[] particleX = new int[1];
+    /** The y position of each particle's center, in world pixels. */
+    private int[] particleY = new int[1];
+    /** What each particle looks like. */
+    private Texture[] particleSprite = new Texture[1];
+    /** How many lit lights reach the view. */
+    private int lights;
+    /** The left of each light's glow, in world pixels. */
+    private int[] lightX = new int[1];
+    /** The bottom of each light's glow, in world pixels. */
+    private int[] lightY = new int[1];
+    /** The width of each light's glow, in pixels. */
+    private int[] lightW = new int[1];
+    /** The height of each light's glow, in pixels. */
+    private int[] lightH = new int[1];
+    /** The pixels of each light's glow. */
+    private PixelBuffer[] lightPixels = new PixelBuffer[1];
+
+    /**
+     * Forget the props, particles and lights, to start filling in a new
+     * frame.
+     */
+    public void clear() {
+        //let go of the images, so old sprites can be collected
+        Arrays.fill(propImage, 0, props, null);
+        Arrays.fill(propPixels, 0, props, null);
+        Arrays.fill(lightPixels, 0, lights, null);
+        props = 0;
+        particles = 0;
+        lights = 0;
+    }
+
+    /**
+     * Add a dynamic prop.  The arrays only grow when a frame has more
+     * props than any before it.
+     * @param x The left of the prop, in world pixels
+     * @param y The bottom of the prop, in world pixels
+     * @param w The width of the prop
+     * @param h The height of the prop
+     * @param image The prop's image, or null
+     * @param pixels The prop's pixels, or null
+     */
+    public void addProp(int x, int y, int w, int h,
+                        Image image, PixelBuffer pixels) {
+        if (props == propX.length) {
+            propX = Arrays.copyOf(propX, props * 2);
+            propY = Arrays.copyOf(propY, props * 2);
+            propW = Arrays.copyOf(propW, props * 2);
+            propH = Arrays.copyOf(propH, props * 2);
+            propImage = Arrays.copyOf(propImage, props * 2);
+            propPixels = Arrays.copyOf(propPixels, props * 2);
+        }
+        propX[props] = x;
+        propY[props] = y;
+        propW[props] = w;
+        propH[props] = h;
+        propImage[props] = image;
+        propPixels[props] = pixels;
+        props++;
+    }
+
+    /**
+     * Add a particle.  The arrays only grow when a frame has more
+     * particles than any before it.
+     * @param x The x position of its center, in world pixels
+     * @param y The y position of its center, in world pixels
+     * @param sprite What it looks like
+     */
+    public void addParticle(int x, int y, Texture sprite) {
+        if (particles == particleX.length) {
+            particleX = Arrays.copyOf(particleX, particles * 2);
+            particleY = Arrays.copyOf(particleY, particles * 2);
+            particleSprite = Arrays.copyOf(particleSprite, particles * 2);
+        }
+        particleX[particles] = x;
+        particleY[particles] = y;
+        particleSprite[particles] = sprite;
+        particles++;
+    }
+
+    /**
+     * Add a lit light.  The arrays only grow when a frame has more
+     * lights than any before it.
+     * @param x The left of its glow, in world pixels
+     * @param y The bottom of its glow, in world pixels
+     * @param w The width of its glow
+     * @param h The height of its glow
+     * @param pixels Its glow, which must never change
+     */
+    public void addLight(int x, int y, int w, int h, PixelBuffer pixels) {
+        if (lights == lightX.length) {
+            lightX = Arrays.copyOf(lightX, lights * 2);
+            lightY = Arrays.copyOf(lightY, lights * 2);
+            lightW = Arrays.copyOf(lightW, lights * 2);
+            lightH = Arrays.copyOf(lightH, lights * 2);
+            lightPixels = Arrays.copyOf(lightPixels, lights * 2);
+        }
+        lightX[lights] = x;
+        lightY[lights] = y;
+        lightW[lights] = w;
+        lightH[lights] = h;
+        lightPixels[lights] = pixels;
+        lights++;
+    }
+
+    /**
+     * Get how many dynamic props there are.  They are numbered from 0.
+     * @return The number of props.
+     */
+    public int getPropCount() {
+        return props;
+    }
+
+    /**
+     * Get a dynamic prop's left edge.
+     * @param i The prop's number
+     * @return The left of the prop, in world pixels
+     */
+    public int getPropX(int i) {
+        return propX[i];
+    }
+
+    /**
+     * Get a dynamic prop's bottom edge.
+     * @param i The prop's number
+     * @return The bottom of the prop, in world pixels
+     */
+    public int getPropY(int i) {
+        return propY[i];
+    }
+
+    /**
+     * Get a dynamic prop's width.
+     * @param i The prop's number
+     * @return The width of the prop, in pixels
+     */
+    public int getPropWidth(int i) {
+        return propW[i];
+    }
+
+    /**
+     * Get a dynamic prop's height.
+     * @param i The prop's number
+     * @return The height of the prop, in pixels
+     */
+    public int getPropHeight(int i) {
+        return propH[i];
+    }
+
+    /**
+     * Get a dynamic prop's image.
+     * @param i The prop's number
+     * @return The image, or null to draw getPropPixels instead.
+     */
+    public Image getPropImage(int i) {
+        return propImage[i];
+    }
+
+    /**
+     * Get a dynamic prop's pixels.
+     * @param i The prop's number
+     * @return The pixels (0,0 is the bottom left), or null.
+     */
+    public PixelBuffer getPropPixels(int i) {
+        return propPixels[i];
+    }
+
+    /**
+     * Get how many particles there are.  They are numbered from 0.
+     * @return The number of particles.
+     */
+    public int getParticleCount() {
+        return particles;
+    }
+
+    /**
+     * Get where a particle is.
+     * @param i The particle's number
+     * @return The x position of its center, in world pixels
+     */
+    public int getParticleX(int i) {
+        return particleX[i];
+    }
+
+    /**
+     * Get where a particle is.
+     * @param i The particle's number
+     * @return The y position of its center, in world pixels
+     */
+    public int getParticleY(int i) {
+        return particleY[i];
+    }
+
+    /**
+     * Get what a particle looks like.
+     * @param i The particle's number
+     * @return The texture to draw it with.
+     */
+    public Texture getParticleSprite(int i) {
+        return particleSprite[i];
+    }
+
+    /**
+     * Get how many lit lights reach the view.  They are numbered from 0.
+     * @return The number of lights.
+     */
+    public int getLightCount() {
+        return lights;
+    }
+
+    /**
+     * Get a light's left edge.
+     * @param i The light's number
+     * @return The left of its glow, in world pixels
+     */
+    public int getLightX(int i) {
+        return lightX[i];
+    }
+
+    /**
+     * Get a light's bottom edge.
+     * @param i The light's number
+     * @return The bottom of its glow, in world pixels
+     */
+    public int getLightY(int i) {
+        return lightY[i];
+    }
+
+    /**
+     * Get a light's width.
+     * @param i The light's number
+     * @return The width of its glow, in pixels
+     */
+    public int getLightWidth(int i) {
+        return lightW[i];
+    }
+
+    /**
+     * Get a light's height.
+     * @param i The light's number
+     * @return The height of its glow, in pixels
+     */
+    public int getLightHeight(int i) {
+        return lightH[i];
+    }
+
+    /**
+     * Get a light's glow.
+     * @param i The light's number
+     * @return The pixels (0,0 is the bottom left).
+     */
+    public PixelBuffer getLightPixels(int i) {
+        return lightPixels[i];
+    }
+}
@@ -0,0 +1,71 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Hands the newest snapshot from the game thread to the thread that
+ * draws it, without locks and without either thread waiting.  There are
+ * three snapshots: one being filled in, one being drawn, and the
+ * newest finished one in between.  Publishing swaps the filled one into
+ * the middle; acquiring swaps the middle one out, if it is new.  Each
+ * swap is one atomic exchange, so neither side ever sees a snapshot
+ * the other is still using.</p>
+ * <p>If the game thread publishes faster than frames are drawn, the
+ * frames in between are never drawn.  This gives the lowest latency;
+ * see SnapshotQueue for drawing every frame.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class SnapshotBuffer implements SnapshotChannel {
+    /** The newest finished snapshot, or a stale one already drawn. */
+    private final AtomicReference<Slot> middle;
+    /** The snapshot the game thread is filling in. */
+    private Slot back = new Slot();
+    /** The snapshot the drawing thread is using. */
+    private Slot front = new Slot();
+
+    /**
+     * Constructor: three empty snapshots, none of them published.
+     */
+    public SnapshotBuffer() {
+        middle = new AtomicReference<Slot>(new Slot());
+    }
+
+    @Override
+    public Snapshot getBack() {
+        return back.snapshot;
+    }
+
+    @Override
+    public void publish() {
+        back.fresh = true;
+        back = middle.getAndSet(back);
+    }
+
+    /**
+     * Get the newest published snapshot, skipping any older ones the 
+     * drawing thread never had.
+     * @return The snapshot to draw, or null if nothing new has been
+     * published.
+     */
+    @Override
+    public Snapshot acquire() {
+        if (!middle.get().fresh) {
+            return null;
+        }
+        front.fresh = false;
+        front = middle.getAndSet(front);
+        return front.snapshot;
+    }
+
+    /**
+     * <p>A snapshot, and whether it has been drawn yet.</p>
+     */
+    private static class Slot {
+        /** The snapshot. */
+        private final Snapshot snapshot = new Snapshot();
+        /** True if published since it was last drawn. */
+        private boolean fresh;
+    }
+}
@@ -0,0 +1,35 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+/**
+ * <p>Carries snapshots from the game thread to the thread that draws
+ * them.  The game thread fills in getBack and publishes it; the drawing
+ * thread acquires what has been published.  How many frames may be
+ * waiting, and what happens when the drawing falls behind, is up to
+ * the implementation.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public interface SnapshotChannel {
+    /**
+     * Get the snapshot to fill in.  Only for the game thread, and only
+     * until it calls publish.
+     * @return The snapshot being filled in.
+     */
+    Snapshot getBack();
+
+    /**
+     * Hand the snapshot from getBack over to the drawing thread, and
+     * take another to fill in next time.  Only for the game thread.
+     */
+    void publish();
+
+    /**
+     * Get the next published snapshot the drawing thread hasn't had.
+     * Only for the drawing thread.  A snapshot stays the drawing
+     * thread's until a later call returns another one.
+     * @return The snapshot to draw, or null if nothing new has been
+     * published.
+     */
+    Snapshot acquire();
+}
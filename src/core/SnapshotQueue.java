@@ -0,0 +1,97 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Hands every snapshot from the game thread to the thread that draws
+ * them, in order, with up to a fixed number waiting.  The game thread
+ * can run that many frames ahead of the drawing, simulating the next
+ * frames while the current one is drawn; once it is that far ahead, it
+ * waits for a frame to be drawn.</p>
+ * <p>A deeper queue smooths over frames that are slow to simulate or
+ * to draw, at the cost of showing each frame later.  A depth of 1
+ * overlaps simulating one frame with drawing the one before.</p>
+ * <p>If nothing draws for a while (e.g. the window is hidden), the
+ * oldest waiting frames are dropped so the game doesn't stall, until
+ * drawing starts again.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class SnapshotQueue implements SnapshotChannel {
+    /** How long to wait for a frame to be drawn before dropping one. */
+    private static final long PATIENCE_MS = 100;
+
+    /** Snapshots that nobody is using. */
+    private final ArrayBlockingQueue<Snapshot> free;
+    /** Published snapshots waiting to be drawn, oldest first. */
+    private final ArrayBlockingQueue<Snapshot> ready;
+    /** The snapshot the game thread is filling in. */
+    private Snapshot back = new Snapshot();
+    /** The snapshot the drawing thread has.  Blank until the first. */
+    private Snapshot drawn = new Snapshot();
+    /** Whether the drawing stopped taking frames, so publish shouldn't 
+     * wait for it again until it takes one. */
+    private volatile boolean stalled;
+
+    /**
+     * Constructor: enough snapshots for one being filled in, one being
+     * drawn and depth waiting.
+     * @param depth The most frames that can wait to be drawn, at least 1
+     */
+    public SnapshotQueue(int depth) {
+        free = new ArrayBlockingQueue<Snapshot>(depth);
+        ready = new ArrayBlockingQueue<Snapshot>(depth);
+        for (int i = 0; i < depth; i++) {
+            free.add(new Snapshot());
+        }
+    }
+
+    @Override
+    public Snapshot getBack() {
+        return back;
+    }
+
+    /**
+     * Take a free snapshot to fill in next time, waiting for one if 
+     * the queue is full, and queue the one from getBack to be drawn.
+     */
+    @Override
+    public void publish() {
+        Snapshot next = null;
+        while (next == null) {
+            try {
+                next = stalled 
+                        ? free.poll() 
+                        : free.poll(PATIENCE_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            if (next == null) {
+                //nothing is drawing; drop the oldest frame instead
+                stalled = true;
+                next = ready.poll();
+            }
+        }
+        //there is room now: the one taken was free or waiting
+        ready.add(back);
+        back = next;
+    }
+
+    /**
+     * Get the oldest published snapshot the drawing thread hasn't had,
+     * and free the one it had before.
+     * @return The snapshot to draw, or null if none are waiting.
+     */
+    @Override
+    public Snapshot acquire() {
+        Snapshot next = ready.poll();
+        if (next != null) {
+            free.add(drawn);
+            drawn = next;
+            stalled = false;
+        }
+        return next;
+    }
+}
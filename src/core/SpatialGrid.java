@@ -0,0 +1,318 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A uniform grid for finding things near an area without testing
+ * every thing.  Each item is stored in the bucket of every cell its
+ * bounds cover, so a query only looks at the items in the cells it
+ * covers: O(cells + matches) instead of O(items).</p>
+ * <p>Cells are hashed into a fixed number of buckets, so the grid has
+ * no edges: items can be anywhere, even outside the level.  Moving an
+ * item only touches the buckets if it crosses into another cell.</p>
+ * <p>Not thread safe.</p>
+ * @param <T> The type of item stored.
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class SpatialGrid<T> {
+    /** Number of buckets cells are hashed into. Must be a power of 2. */
+    private static final int BUCKETS = 4096;
+    /** Room for this many ids in a bucket before it first grows. */
+    private static final int BUCKET_CAPACITY = 4;
+    /** Multiplier to spread columns across the buckets. */
+    private static final int HASH_COL = 73856093;
+    /** Multiplier to spread rows across the buckets. */
+    private static final int HASH_ROW = 19349663;
+
+    /** The size of a cell, in pixels. */
+    private final int cellSize;
+    /** The items, indexed by id. Removed ids hold null. */
+    private ArrayList<Entry> entries = new ArrayList<Entry>();
+    /** Ids of removed items, for reuse. */
+    private int[] free = new int[BUCKET_CAPACITY];
+    /** Number of ids in free. */
+    private int freeCount;
+    /** The ids of the items in each bucket. Allocated up front, so that
+     * moving into a new cell doesn't allocate. */
+    private int[][] buckets = new int[BUCKETS][BUCKET_CAPACITY];
+    /** How many ids are in each bucket. */
+    private int[] bucketSize = new int[BUCKETS];
+    /** Marks items already found by the current query. */
+    private int queryStamp;
+
+    /**
+     * Constructor for an empty grid.
+     * @param cellSize The size of a cell in pixels, e.g. Level.CELL_SIZE
+     */
+    public SpatialGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Add an item to the grid.
+     * @param item The item to add.
+     * @param bounds The area the item covers.
+     * @return The id of the item, for move and remove.
+     */
+    public int add(T item, Rectangle bounds) {
+        return add(item, bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * Add an item to the grid.
+     * @param item The item to add.
+     * @param x The left of the area the item covers
+     * @param y The bottom of the area the item covers
+     * @param w The width of the area the item covers
+     * @param h The height of the area the item covers
+     * @return The id of the item, for move and remove.
+     */
+    public int add(T item, int x, int y, int w, int h) {
+        int id;
+        Entry entry = new Entry(item);
+        if (freeCount > 0) {
+            id = free[--freeCount];
+            entries.set(id, entry);
+        } else {
+            id = entries.size();
+            entries.add(entry);
+        }
+        entry.setBounds(x, y, w, h);
+        insert(id, entry);
+        return id;
+    }
+
+    /**
+     * Tell the grid that an item has moved or changed size.
+     * @param id The id add returned.
+     * @param bounds The area the item now covers.
+     */
+    public void move(int id, Rectangle bounds) {
+        move(id, bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * Tell the grid that an item has moved or changed size.
+     * @param id The id add returned.
+     * @param x The left of the area the item now covers
+     * @param y The bottom of the area the item now covers
+     * @param w The width of the area the item now covers
+     * @param h The height of the area the item now covers
+     */
+    public void move(int id, int x, int y, int w, int h) {
+        Entry entry = entries.get(id);
+        int col0 = entry.col0;
+        int row0 = entry.row0;
+        int col1 = entry.col1;
+        int row1 = entry.row1;
+        entry.setBounds(x, y, w, h);
+        if (col0 != entry.col0 || row0 != entry.row0
+                || col1 != entry.col1 || row1 != entry.row1) {
+            erase(id, col0, row0, col1, row1);
+            insert(id, entry);
+        }
+    }
+
+    /**
+     * Take an item out of the grid. Its id may be reused by add.
+     * @param id The id add returned.
+     */
+    public void remove(int id) {
+        Entry entry = entries.get(id);
+        erase(id, entry.col0, entry.row0, entry.col1, entry.row1);
+        entries.set(id, null);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    /**
+     * Get an item.
+     * @param id The id add returned.
+     * @return The item with that id.
+     */
+    public T get(int id) {
+        return entries.get(id).item;
+    }
+
+    /**
+     * Find every item whose area overlaps the given area.
+     * @param area The area to search.
+     * @param out The list to add the items found to. Not cleared first.
+     */
+    public void query(Rectangle area, List<T> out) {
+        query(area.x, area.y, area.width, area.height, out);
+    }
+
+    /**
+     * Find every item whose area overlaps the given area.
+     * @param x The left of the area to search
+     * @param y The bottom of the area to search
+     * @param w The width of the area to search
+     * @param h The height of the area to search
+     * @param out The list to add the items found to. Not cleared first.
+     */
+    public void query(int x, int y, int w, int h, List<T> out) {
+        int col1 = cellOf(x + Math.max(w, 1) - 1);
+        int row1 = cellOf(y + Math.max(h, 1) - 1);
+        int[] bucket;
+        int b;
+        Entry entry;
+
+        queryStamp++;
+        for (int col = cellOf(x); col <= col1; col++) {
+            for (int row = cellOf(y); row <= row1; row++) {
+                b = bucketOf(col, row);
+                bucket = buckets[b];
+                for (int i = 0; i < bucketSize[b]; i++) {
+                    entry = entries.get(bucket[i]);
+                    //a bucket holds many cells, and an item many buckets
+                    if (entry.stamp != queryStamp
+                            && entry.overlaps(x, y, w, h)) {
+                        entry.stamp = queryStamp;
+                        out.add(entry.item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an id to the buckets of every cell its entry covers.
+     * @param id The id of the entry
+     * @param entry The entry, with its cells up to date
+     */
+    private void insert(int id, Entry entry) {
+        int b;
+        for (int col = entry.col0; col <= entry.col1; col++) {
+            for (int row = entry.row0; row <= entry.row1; row++) {
+                b = bucketOf(col, row);
+                if (bucketSize[b] == buckets[b].length) {
+                    buckets[b] = Arrays.copyOf(buckets[b],
+                                               bucketSize[b] * 2);
+                }
+                buckets[b][bucketSize[b]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Remove an id from the buckets of a range of cells.
+     * @param id The id to remove
+     * @param col0 The first column
+     * @param row0 The first row
+     * @param col1 The last column
+     * @param row1 The last row
+     */
+    private void erase(int id, int col0, int row0, int col1, int row1) {
+        int b;
+        int[] bucket;
+        for (int col = col0; col <= col1; col++) {
+            for (int row = row0; row <= row1; row++) {
+                b = bucketOf(col, row);
+                bucket = buckets[b];
+                for (int i = 0; i < bucketSize[b]; i++) {
+                    if (bucket[i] == id) {
+                        bucket[i] = bucket[--bucketSize[b]];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the cell a pixel coordinate is in, rounding down even when
+     * negative.
+     * @param v A pixel coordinate
+     * @return The cell coordinate
+     */
+    private int cellOf(int v) {
+        if (v >= 0) {
+            return v / cellSize;
+        }
+        return -((-v - 1) / cellSize) - 1;
+    }
+
+    /**
+     * Get the bucket a cell is stored in.
+     * @param col The cell column
+     * @param row The cell row
+     * @return The bucket index
+     */
+    private static int bucketOf(int col, int row) {
+        return ((col * HASH_COL) ^ (row * HASH_ROW)) & (BUCKETS - 1);
+    }
+
+    /**
+     * <p>An item in the grid, with the area and cells it covers.</p>
+     */
+    private class Entry {
+        /** The item. */
+        private final T item;
+        /** The left of the item's area. */
+        private int x;
+        /** The bottom of the item's area. */
+        private int y;
+        /** The width of the item's area. */
+        private int w;
+        /** The height of the item's area. */
+        private int h;
+        /** The first column the item covers. */
+        private int col0;
+        /** The first row the item covers. */
+        private int row0;
+        /** The last column the item covers. */
+        private int col1;
+        /** The last row the item covers. */
+        private int row1;
+        /** The last query that found this item. */
+        private int stamp;
+
+        /**
+         * Constructor for an entry with no area yet.
+         * @param item The item.
+         */
+        Entry(T item) {
+            this.item = item;
+        }
+
+        /**
+         * Set the item's area and work out which cells it covers.
+         * @param newX The left of the area
+         * @param newY The bottom of the area
+         * @param newW The width of the area
+         * @param newH The height of the area
+         */
+        void setBounds(int newX, int newY, int newW, int newH) {
+            x = newX;
+            y = newY;
+            w = newW;
+            h = newH;
+            col0 = cellOf(x);
+            row0 = cellOf(y);
+            col1 = cellOf(x + Math.max(w, 1) - 1);
+            row1 = cellOf(y + Math.max(h, 1) - 1);
+        }
+
+        /**
+         * Test if the item's area overlaps another area.  Empty areas
+         * count as a single pixel, so points can be found.
+         * @param ox The left of the other area
+         * @param oy The bottom of the other area
+         * @param ow The width of the other area
+         * @param oh The height of the other area
+         * @return true if the areas overlap.
+         */
+        boolean overlaps(int ox, int oy, int ow, int oh) {
+            return x < ox + Math.max(ow, 1) && ox < x + Math.max(w, 1)
+                && y < oy + Math.max(oh, 1) && oy < y + Math.max(h, 1);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * <p>An image decoded once into every form the game draws it from: the
+ * image itself, packed ARGB pixels and ABGR bytes.  A TexturePack holds
+ * one per texture, so entities can share them and switch between them
+ * without decoding anything.</p>
+ * <p>Sprites never change once made.  The arrays they hand out are
+ * their own, so don't change those either.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public final class Sprite {
+    /** The image. */
+    private final Image image;
+    /** The image's pixels, bottom row first. */
+    private final PixelBuffer pixels;
+    /** The image's pixels as bytes: {a,b,g,r,a,b,g,r...}. */
+    private final byte[] data;
+    /** The width in pixels. */
+    private final int width;
+    /** The height in pixels. */
+    private final int height;
+
+    /**
+     * Constructor: decode an image.  The image must already be loaded.
+     * @param image The image to decode
+     */
+    public Sprite(Image image) {
+        BufferedImage bi = Util.toBufferedImage(image);
+        this.image = image;
+        width = image.getWidth(null);
+        height = image.getHeight(null);
+        pixels = new PixelBuffer(width, height);
+        Util.imageToPixels(bi, pixels);
+        data = ((DataBufferByte) bi.getRaster()
+                                   .getDataBuffer()).getData();
+    }
+
+    /**
+     * Get the image, for drawing with Graphics.
+     * @return The image.
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Get the packed ARGB pixels.
+     * @return The pixel buffer (0,0 is the bottom left).
+     */
+    public PixelBuffer getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Get the abgr bytes of the image.
+     * @return A byte array of {a,b,g,r,a,b,g,r...}.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Get the width.
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height.
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+}
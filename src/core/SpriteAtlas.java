@@ -0,0 +1,135 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+
+/**
+ * <p>Every texture of a TexturePack side by side in one sheet of
+ * premultiplied ARGB pixels, so sprites can be blended over the screen
+ * with a multiply and an add per channel, and only where they are
+ * partly transparent.</p>
+ * <p>Like the rest of the pixel pipeline, 0,0 is the bottom left of
+ * the sheet.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class SpriteAtlas {
+    /** Mask for the red and blue channels of a packed color. */
+    private static final int RB_MASK = 0x00FF00FF;
+    /** Mask for the green channel of a packed color. */
+    private static final int G_MASK = 0x0000FF00;
+    /** Half of 255 in the red and blue channels, for rounding. */
+    private static final int RB_HALF = 0x00800080;
+    /** Half of 255 in the green channel, for rounding. */
+    private static final int G_HALF = 0x00008000;
+
+    /** The sheet, premultiplied. */
+    private final PixelBuffer sheet;
+    /** Where each texture is in the sheet, by ordinal. */
+    private final Rectangle[] regions;
+    /** Where each texture's image is in the sheet. */
+    private final IdentityHashMap<Image, Rectangle> byImage =
+            new IdentityHashMap<Image, Rectangle>();
+
+    /**
+     * Constructor: copy every texture into one sheet.
+     * @param tp The textures.
+     */
+    public SpriteAtlas(TexturePack tp) {
+        Texture[] textures = Texture.values();
+        int width = 0;
+        int height = 0;
+        int x = 0;
+        PixelBuffer src;
+        int[] data;
+        regions = new Rectangle[textures.length];
+
+        //one row of sprites, bottom aligned
+        for (Texture t : textures) {
+            width += tp.getP(t).getWidth();
+            height = Math.max(height, tp.getP(t).getHeight());
+        }
+        sheet = new PixelBuffer(width, height);
+        data = sheet.getData();
+        for (Texture t : textures) {
+            src = tp.getP(t);
+            sheet.copy(src, 0, 0, x, 0, src.getWidth(), src.getHeight());
+            regions[t.ordinal()] = new Rectangle(x, 0,
+                    src.getWidth(), src.getHeight());
+            byImage.put(tp.get(t), regions[t.ordinal()]);
+            x += src.getWidth();
+        }
+        for (int i = 0; i < data.length; i++) {
+            data[i] = premultiply(data[i]);
+        }
+    }
+
+    /**
+     * Get the sheet all the sprites are in.
+     * @return The premultiplied pixels.  Don't change them.
+     */
+    public PixelBuffer getSheet() {
+        return sheet;
+    }
+
+    /**
+     * Get where a texture is in the sheet.
+     * @param t The texture
+     * @return The texture's region of the sheet.  Don't change it.
+     */
+    public Rectangle getRegion(Texture t) {
+        return regions[t.ordinal()];
+    }
+
+    /**
+     * Get where an image from the texture pack is in the sheet.
+     * @param image The image, as returned by TexturePack.get
+     * @return The image's region of the sheet, or null if the image
+     * isn't one of the pack's.
+     */
+    public Rectangle getRegion(Image image) {
+        return byImage.get(image);
+    }
+
+    /**
+     * Scale a color's channels by its alpha.
+     * @param argb A packed color with straight alpha
+     * @return The same color, premultiplied.
+     */
+    public static int premultiply(int argb) {
+        int a = argb >>> PixelBuffer.A_SHIFT;
+        if (a == Util.B_MAX) {
+            return argb;
+        }
+        return (argb & PixelBuffer.ALPHA_MASK)
+             | scale(argb, a);
+    }
+
+    /**
+     * Blend a premultiplied color over an opaque one.
+     * @param dst The color underneath
+     * @param src The premultiplied color on top
+     * @return The blended color, with src's alpha.
+     */
+    public static int blend(int dst, int src) {
+        return src + scale(dst, Util.B_MAX - (src >>> PixelBuffer.A_SHIFT));
+    }
+
+    /**
+     * Scale the color channels of a packed color by factor / 255,
+     * rounded, two channels per multiply.
+     * @param argb The packed color
+     * @param factor How much to keep, 0:255
+     * @return The scaled channels, with no alpha.
+     */
+    private static int scale(int argb, int factor) {
+        int rb = (argb & RB_MASK) * factor + RB_HALF;
+        int g = (argb & G_MASK) * factor + G_HALF;
+        //x / 255 is (x + x / 256) / 256, near enough
+        rb = (rb + ((rb >>> Byte.SIZE) & RB_MASK)) >>> Byte.SIZE;
+        g = (g + ((g >>> Byte.SIZE) & G_MASK)) >>> Byte.SIZE;
+        return (rb & RB_MASK) | (g & G_MASK);
+    }
+}
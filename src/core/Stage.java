@@ -0,0 +1,49 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+/**
+ * <p>The parts of a frame that the Profiler times.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public enum Stage {
+    /** The game thread's work for one frame, not counting the wait. */
+    frame("frame"),
+    /** Physics for one step. */
+    simulate("simulate"),
+    /** Moving the camera after one step. */
+    updateCamPos("camera"),
+    /** Testing and firing triggers after one step. */
+    testTriggers("triggers"),
+    /** Moving particles and releasing dead ones, per frame. */
+    updateParticles("particles"),
+    /** Compositing background chunks, per draw. */
+    updateComp("comp"),
+    /** Copying composited chunks into their images, per draw. */
+    updateImage("image"),
+    /** Adding up the lights and adding them over the screen. */
+    lights("lights"),
+    /** Blending dynamic props and particles over the screen. */
+    mergeDynProps("dyn props"),
+    /** Drawing chunks and the finished screen. */
+    blit("blit");
+
+    /** The short name to show on the overlay. */
+    private final String label;
+
+    /**
+     * Initializer to save the label.
+     * @param label The short name to show on the overlay
+     */
+    private Stage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Get the short name for this stage.
+     * @return The label to display.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
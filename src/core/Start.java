@@ -1,5 +1,8 @@
 package core;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.swing.JFrame;
 
 /**
@@ -10,13 +13,38 @@ import javax.swing.JFrame;
 public class Start {
     /**
     * Creates and displays the application frame.
-    * @param args Unused
+    * @param args Optionally, a level file to play, -active to 
+    * draw with active rendering, and -pipeline n to draw every frame 
+    * with the game up to n frames ahead of the drawing
+    * @throws IOException if the level file can't be opened.
     */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Engine engine;
+        String level = null;
+        boolean active = false;
+        int depth = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-active")) {
+                active = true;
+            } else if (args[i].equals("-pipeline") && i + 1 < args.length) {
+                depth = Integer.parseInt(args[++i]);
+            } else {
+                level = args[i];
+            }
+        }
+        if (level != null) {
+            engine = new Engine(new File(level));
+        } else {
+            engine = new Engine();
+        }
+        if (active) {
+            engine.useActiveRendering();
+        }
+        engine.setPipelineDepth(depth);
         JFrame frame = new JFrame("Direction");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        frame.getContentPane().add(new Engine());
+        frame.getContentPane().add(engine);
 
         frame.pack();
         frame.setVisible(true);
@@ -3,7 +3,6 @@ package core;
 
 import java.awt.Image;
 import java.awt.Toolkit;
-import java.awt.image.BufferedImage;
 import java.net.URL;
 
 import javax.swing.ImageIcon;
@@ -19,8 +18,10 @@ public class TexturePack {
     private ImageIcon[] images = new ImageIcon[Texture.values().length];
     /** Stores the actual images. */
     private Image[] imgs = new Image[Texture.values().length];
-    /** Stores the pixels of each image. */
-    private double[][][][] pixels = new double[Texture.values().length][][][];
+    /** Stores each image, decoded. */
+    private Sprite[] sprites = new Sprite[Texture.values().length];
+    /** Every image in one premultiplied sheet, for blending sprites. */
+    private SpriteAtlas atlas;
     
     /**
      * Constructor, that requires the user to supply a path to the images.
@@ -31,7 +32,6 @@ public class TexturePack {
         String path;
         URL res;
         Toolkit defToolkit = Toolkit.getDefaultToolkit();
-        BufferedImage swap;
         for (int i = 0; i < Texture.values().length; i++) {
             path = basePath + Texture.values()[i].getName();
             /* Don't ask me why this next line is important. Just trust me.
@@ -41,12 +41,9 @@ public class TexturePack {
             images[i] = new ImageIcon(getClass().getResource(path));
             res = getClass().getResource(path);
             imgs[i] = defToolkit.getImage(res);
-            swap = Util.toBufferedImage(imgs[i]);
-            pixels[i] = new double[imgs[i].getWidth(null)]
-                                  [imgs[i].getHeight(null)]
-                                  [Util.CHANNELS];
-            Util.imageToPixels(swap, pixels[i]);
+            sprites[i] = new Sprite(imgs[i]);
         }
+        atlas = new SpriteAtlas(this);
     }
 
     /**
@@ -59,11 +56,28 @@ public class TexturePack {
     }
     
     /**
-     * Convert a Texture enum into a pixel array.
+     * Get a texture decoded once, to share between entities.
      * @param t The Texture to source
-     * @return The pixel array to draw.
+     * @return The sprite.
      */
-    public double[][][] getP(Texture t) {
-        return pixels[t.ordinal()];
+    public Sprite getSprite(Texture t) {
+        return sprites[t.ordinal()];
+    }
+    
+    /**
+     * Get the sprite atlas holding every texture in the pack.
+     * @return The atlas.
+     */
+    public SpriteAtlas getAtlas() {
+        return atlas;
+    }
+    
+    /**
+     * Convert a Texture enum into a pixel buffer.
+     * @param t The Texture to source
+     * @return The pixel buffer to draw.
+     */
+    public PixelBuffer getP(Texture t) {
+        return sprites[t.ordinal()].getPixels();
     }
 }
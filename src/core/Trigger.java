@@ -16,6 +16,13 @@ public interface Trigger {
      * @return true if the action should trigger
      */
     boolean isTriggered(Rectangle bounds);
+    /**
+     * Get the area something has to overlap to possibly trigger this,
+     * so that far away triggers can be skipped without testing them.
+     * @param rv The rectangle to store the area in.
+     * @return rv, holding the trigger's area.
+     */
+    Rectangle getTriggerArea(Rectangle rv);
     /**
      * The action performed when a particular trigger is activated.
      */
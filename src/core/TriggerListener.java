@@ -0,0 +1,16 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+/**
+ * <p>Interface for things that react when a Trigger fires, such as
+ * drawing a spark or redrawing the lit background.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public interface TriggerListener {
+    /**
+     * Called after a trigger has performed its action.
+     * @param trigger The trigger that fired.
+     */
+    void triggerFired(Trigger trigger);
+}
@@ -105,6 +105,16 @@ public class Vector2D {
         return new Vector2D(x * factor, y * factor);
     }
 
+    /**
+     * Multiplies each component of the vector by its own factor. Mutates.
+     * @param factorX The value to multiply x by
+     * @param factorY The value to multiply y by
+     */
+    public void scale(double factorX, double factorY) {
+        x *= factorX;
+        y *= factorY;
+    }
+
     /**
      * Offsets (adds) the vector by the given vector's values. Mutates.
      * @param v Offset by the components of this vector.
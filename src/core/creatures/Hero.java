@@ -22,61 +22,32 @@ public class Hero extends Entity implements Dynamic {
     private static final double DRAG_FACTOR_Y = 0.2;
     /** How much smaller the collision box is than the graphic. */
     private static final double CBOX_SCALE = 0.65;
-    /** The hero's current velocity. */
-    private Vector2D vel;
-    /** The forces currently acting on the hero. */
-    private Vector2D force;
     /** True if hero is on the ground. */
     private boolean onGround;
 
     /**
-     * Hero constructor, default with 0 velocity and force.
+     * Hero constructor, at the origin.
      */
     public Hero() {
         super();
-        vel = new Vector2D(0, 0);
-        force = new Vector2D(0, 0);
     }
     
     @Override
-    public void applyForces(double seconds) {
-        vel.x += force.x * seconds;
-        vel.y += force.y * seconds;
-        force.set(0, 0);
-    }
-
-    @Override
-    public void addForce(Vector2D f) {
-        force.offset(f);
-    }
-
-    @Override
-    public Vector2D getVel() {
-        return vel;
-    }
-
-    @Override
-    public void setVel(Vector2D v) {
-        vel = new Vector2D(v);
-    }
-    
-    @Override
-    public void applyDrag(double seconds) {
-        double factorX = 1 - DRAG_FACTOR * seconds;
-        double factorY = 1 - (DRAG_FACTOR * DRAG_FACTOR_Y) * seconds;
-        vel = new Vector2D(vel.x * factorX, vel.y * factorY);
+    public Vector2D getDrag() {
+        return new Vector2D(DRAG_FACTOR, DRAG_FACTOR * DRAG_FACTOR_Y);
     }
     
     @Override
     /**
-     * Get the width and height of the entity.
-     * @return A new dimension object holding the width and height.
+     * Get the width and height of the hero's collision box.
+     * @param rv The dimension to store the size in.
+     * @return rv, holding the width and height.
      */
-    public Dimension getSize() {
-        Dimension dim = super.getSize();
-        Dimension result = new Dimension((int) (dim.height * CBOX_SCALE),
-                                         (int) (dim.width  * CBOX_SCALE));
-        return result;
+    public Dimension getSize(Dimension rv) {
+        super.getSize(rv);
+        rv.setSize((int) (rv.height * CBOX_SCALE),
+                   (int) (rv.width  * CBOX_SCALE));
+        return rv;
     }
     
     /**
@@ -91,6 +62,7 @@ public class Hero extends Entity implements Dynamic {
      * Whether or not the hero is on the ground. 
      * @param onGround the onGround to set
      */
+    @Override
     public void setOnGround(boolean onGround) {
         this.onGround = onGround;
     }
@@ -107,8 +79,8 @@ public class Hero extends Entity implements Dynamic {
     }
     
     @Override
-    public Rectangle getCollisionBox() {
-        Rectangle bounds = super.getBounds();
+    public Rectangle getCollisionBox(Rectangle rv) {
+        Rectangle bounds = super.getBounds(rv);
         bounds.x += (bounds.width  * (1 - CBOX_SCALE) / 2);
         bounds.y += (bounds.height * (1 - CBOX_SCALE) / 2);
         bounds.width  *= CBOX_SCALE;
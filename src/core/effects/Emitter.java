@@ -0,0 +1,202 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.effects;
+
+import java.util.Random;
+
+import core.Texture;
+
+/**
+ * <p>Spawns particles of one kind into a Particles pool, either all at
+ * once (a burst) or as a steady stream.  Each kind of effect is an
+ * emitter with its own settings; see burst, fireHose and pollen.</p>
+ * <p>Particles leave in a fan of directions centered on the emitter's
+ * direction.  With no jitter, they are spread evenly across the fan at
+ * the same speed; with jitter, their directions and speeds are
+ * random.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Emitter {
+    /** A whole turn, in radians. */
+    private static final double TURN = 2 * Math.PI;
+    /** Puts the even fan's particles in the middle of their shares. */
+    private static final double HALF_STEP = 0.5;
+    /** Sparks in a burst. */
+    private static final int BURST_COUNT = 8;
+    /** How fast the sparks of a burst fly, in pixels per second. */
+    private static final double BURST_SPEED = 120;
+    /** How far the sparks of a burst fly, in pixels. */
+    private static final double BURST_REACH = 50;
+    /** Drops a fire hose sprays per second. */
+    private static final double HOSE_RATE = 400;
+    /** How fast a fire hose sprays, in pixels per second. */
+    private static final double HOSE_SPEED = 300;
+    /** How wide a fire hose sprays, in radians. */
+    private static final double HOSE_SPREAD = 0.2;
+    /** How long a fire hose's drops last, in seconds. */
+    private static final double HOSE_LIFE = 1.5;
+    /** How fast a fire hose's drops fall, in pixels per second^2. */
+    private static final double HOSE_GRAVITY = -400;
+    /** How much a fire hose's drops differ. */
+    private static final double HOSE_JITTER = 0.3;
+    /** Grains in a pollen burst. */
+    private static final int POLLEN_COUNT = 24;
+    /** How fast pollen is thrown, at most, in pixels per second. */
+    private static final double POLLEN_SPEED = 40;
+    /** How long pollen drifts, in seconds. */
+    private static final double POLLEN_LIFE = 3;
+    /** How fast pollen settles, in pixels per second^2. */
+    private static final double POLLEN_GRAVITY = -8;
+
+    /** What the particles look like. */
+    private final Texture sprite;
+    /** How many particles each burst spawns. */
+    private final int count;
+    /** How fast particles leave, in pixels per second. */
+    private final double speed;
+    /** How wide a fan particles leave in, in radians. */
+    private final double spread;
+    /** How long particles live, in seconds. */
+    private final double life;
+    /** The y acceleration of particles, in pixels per second^2. */
+    private final double gravity;
+    /** The middle of the fan, in radians anticlockwise from the right. */
+    private double direction;
+    /** How random particles are, 0:1. */
+    private double jitter;
+    /** How many particles a stream spawns per second. */
+    private double rate;
+    /** The part of a particle the stream still owes from last time. */
+    private double owed;
+    /** Random number generator for jitter. */
+    private final Random gen = new Random();
+
+    /**
+     * Constructor: an emitter with no jitter, pointing right.
+     * @param sprite What the particles look like
+     * @param count How many particles each burst spawns
+     * @param speed How fast particles leave, in pixels per second
+     * @param spread How wide a fan particles leave in, in radians
+     * @param life How long particles live, in seconds
+     * @param gravity The y acceleration of particles, in pixels per
+     * second^2
+     */
+    public Emitter(Texture sprite, int count, double speed, double spread,
+                   double life, double gravity) {
+        this.sprite = sprite;
+        this.count = count;
+        this.speed = speed;
+        this.spread = spread;
+        this.life = life;
+        this.gravity = gravity;
+    }
+
+    /**
+     * Make an emitter for a ring of sparks flying out from a point, as
+     * when a light is switched.
+     * @return A new emitter.
+     */
+    public static Emitter burst() {
+        Emitter ring = new Emitter(Texture.spark, BURST_COUNT, BURST_SPEED,
+                                   TURN, BURST_REACH / BURST_SPEED, 0);
+        //turn half a share, so the sparks fly on the compass points
+        ring.setDirection(HALF_STEP * TURN / BURST_COUNT);
+        return ring;
+    }
+
+    /**
+     * Make an emitter for a stream of drops that arc and fall.
+     * @param direction Where the hose points, in radians anticlockwise
+     * from the right
+     * @return A new emitter.  Drive it with stream.
+     */
+    public static Emitter fireHose(double direction) {
+        Emitter hose = new Emitter(Texture.spark, 1, HOSE_SPEED,
+                                   HOSE_SPREAD, HOSE_LIFE, HOSE_GRAVITY);
+        hose.setDirection(direction);
+        hose.setJitter(HOSE_JITTER);
+        hose.setRate(HOSE_RATE);
+        return hose;
+    }
+
+    /**
+     * Make an emitter for a puff of pollen that drifts off slowly in
+     * every direction.
+     * @return A new emitter.
+     */
+    public static Emitter pollen() {
+        Emitter puff = new Emitter(Texture.spark, POLLEN_COUNT,
+                                   POLLEN_SPEED, TURN, POLLEN_LIFE,
+                                   POLLEN_GRAVITY);
+        puff.setJitter(1);
+        return puff;
+    }
+
+    /**
+     * Point the middle of the fan particles leave in.
+     * @param angle The direction, in radians anticlockwise from the
+     * right
+     */
+    public void setDirection(double angle) {
+        direction = angle;
+    }
+
+    /**
+     * Set how random particles' directions and speeds are.
+     * @param amount 0 for an even fan at one speed, 1 for anywhere in
+     * the fan at up to the full speed.
+     */
+    public void setJitter(double amount) {
+        jitter = amount;
+    }
+
+    /**
+     * Set how fast stream spawns particles.
+     * @param perSecond Particles per second
+     */
+    public void setRate(double perSecond) {
+        rate = perSecond;
+    }
+
+    /**
+     * Spawn one burst of particles.
+     * @param pool Where the particles go
+     * @param x Where they start, in pixels
+     * @param y Where they start, in pixels
+     */
+    public void emit(Particles pool, double x, double y) {
+        for (int i = 0; i < count; i++) {
+            spawn(pool, x, y, (i + HALF_STEP) / count);
+        }
+    }
+
+    /**
+     * Spawn as many particles as the stream's rate gives for some time.
+     * @param pool Where the particles go
+     * @param x Where they start, in pixels
+     * @param y Where they start, in pixels
+     * @param seconds How long the stream has run since last time
+     */
+    public void stream(Particles pool, double x, double y, double seconds) {
+        owed += rate * seconds;
+        while (owed >= 1) {
+            owed--;
+            spawn(pool, x, y, HALF_STEP);
+        }
+    }
+
+    /**
+     * Spawn one particle.
+     * @param pool Where the particle goes
+     * @param x Where it starts, in pixels
+     * @param y Where it starts, in pixels
+     * @param place Where it goes in the fan when there's no jitter, 0:1
+     */
+    private void spawn(Particles pool, double x, double y, double place) {
+        double at = place + (gen.nextDouble() - place) * jitter;
+        double angle = direction + (at - HALF_STEP) * spread;
+        double v = speed * (1 - gen.nextDouble() * jitter);
+        pool.spawn(x, y, Math.cos(angle) * v, Math.sin(angle) * v,
+                   gravity, life, sprite);
+    }
+}
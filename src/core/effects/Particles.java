@@ -0,0 +1,166 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.effects;
+
+import core.Texture;
+
+/**
+ * <p>A fixed-size pool of particles, kept as one array per property so
+ * that updating thousands of them is a few tight loops and creating or
+ * killing one never allocates.  Live particles are packed at the front
+ * of the arrays: a dead particle is replaced by the last live one.</p>
+ * <p>Particles are spawned by Emitters and captured for drawing by the
+ * Renderer, all on the game thread.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Particles {
+    /** The textures a sprite id can name, indexed by ordinal. */
+    private static final Texture[] TEXTURES = Texture.values();
+
+    /** The most particles that can be alive at once. */
+    private final int capacity;
+    /** The x position of each particle's center, in pixels. */
+    private final double[] posX;
+    /** The y position of each particle's center, in pixels. */
+    private final double[] posY;
+    /** The x velocity of each particle, in pixels per second. */
+    private final double[] velX;
+    /** The y velocity of each particle, in pixels per second. */
+    private final double[] velY;
+    /** The y acceleration of each particle, in pixels per second^2. */
+    private final double[] accY;
+    /** How long each particle has been alive, in seconds. */
+    private final double[] age;
+    /** How long each particle lives, in seconds. */
+    private final double[] life;
+    /** The texture each particle is drawn with, by ordinal. */
+    private final int[] sprite;
+    /** How many particles are alive. */
+    private int count;
+
+    /**
+     * Constructor: make an empty pool.
+     * @param capacity The most particles that can be alive at once.
+     */
+    public Particles(int capacity) {
+        this.capacity = capacity;
+        posX = new double[capacity];
+        posY = new double[capacity];
+        velX = new double[capacity];
+        velY = new double[capacity];
+        accY = new double[capacity];
+        age = new double[capacity];
+        life = new double[capacity];
+        sprite = new int[capacity];
+    }
+
+    /**
+     * Bring a particle to life, if there is room for it.
+     * @param x The x position of its center, in pixels
+     * @param y The y position of its center, in pixels
+     * @param vx Its x velocity, in pixels per second
+     * @param vy Its y velocity, in pixels per second
+     * @param gravity Its y acceleration, in pixels per second^2
+     * @param lifetime How long it lives, in seconds
+     * @param texture What it looks like
+     * @return false if the pool is full and the particle was dropped.
+     */
+    public boolean spawn(double x, double y, double vx, double vy,
+                         double gravity, double lifetime,
+                         Texture texture) {
+        if (count == capacity) {
+            return false;
+        }
+        posX[count] = x;
+        posY[count] = y;
+        velX[count] = vx;
+        velY[count] = vy;
+        accY[count] = gravity;
+        age[count] = 0;
+        life[count] = lifetime;
+        sprite[count] = texture.ordinal();
+        count++;
+        return true;
+    }
+
+    /**
+     * Move every particle on by some time, and kill those that have
+     * lived out their lifetime.
+     * @param seconds The time that has passed.
+     */
+    public void update(double seconds) {
+        int i = 0;
+        int last;
+        while (i < count) {
+            age[i] += seconds;
+            if (age[i] >= life[i]) {
+                //swap the last live particle into the hole
+                last = --count;
+                posX[i] = posX[last];
+                posY[i] = posY[last];
+                velX[i] = velX[last];
+                velY[i] = velY[last];
+                accY[i] = accY[last];
+                age[i] = age[last];
+                life[i] = life[last];
+                sprite[i] = sprite[last];
+                //the moved particle hasn't been updated yet
+                continue;
+            }
+            velY[i] += accY[i] * seconds;
+            posX[i] += velX[i] * seconds;
+            posY[i] += velY[i] * seconds;
+            i++;
+        }
+    }
+
+    /**
+     * Kill every particle.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Get how many particles are alive.  They are numbered from 0.
+     * @return The number of live particles.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the most particles that can be alive at once.
+     * @return The capacity of the pool.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get where a live particle is.
+     * @param i The particle's number, below size()
+     * @return The x position of its center, in pixels
+     */
+    public double getX(int i) {
+        return posX[i];
+    }
+
+    /**
+     * Get where a live particle is.
+     * @param i The particle's number, below size()
+     * @return The y position of its center, in pixels
+     */
+    public double getY(int i) {
+        return posY[i];
+    }
+
+    /**
+     * Get what a live particle looks like.
+     * @param i The particle's number, below size()
+     * @return The texture to draw it with.
+     */
+    public Texture getSprite(int i) {
+        return TEXTURES[sprite[i]];
+    }
+}
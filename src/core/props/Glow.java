@@ -0,0 +1,163 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.props;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.PixelBuffer;
+import core.Util;
+
+/**
+ * <p>Builds and shares the glow sprites drawn around lights.</p>
+ * <p>A glow fades from the light's color at its center to black at its
+ * radius, as the square of the distance left to the edge.  That curve
+ * is looked up from one table indexed by squared distance, so building
+ * a glow needs no square roots.  Glows are cached by radius and by
+ * color rounded to COLOR_BITS per channel, so lights that look the same
+ * share one sprite.  Only the CACHE_LIMIT most recently used are kept;
+ * a light holds on to its own glow, so an evicted glow is only built
+ * again for a new light.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public final class Glow {
+    /** Entries in the falloff table, for squared distances 0:1. */
+    private static final int STEPS = 1 << 16;
+    /** Falloff values are fixed point, with this many fraction bits. */
+    private static final int FIXED_BITS = 16;
+    /** Bits kept of each color channel in a cache key. */
+    private static final int COLOR_BITS = 5;
+    /** Bits a color channel is rounded off by. */
+    private static final int COLOR_DROP = Byte.SIZE - COLOR_BITS;
+    /** How many glows to keep before evicting. */
+    private static final int CACHE_LIMIT = 32;
+    /** Opaque black, which the glow's colors are added to. */
+    private static final int OPAQUE = PixelBuffer.ALPHA_MASK;
+    /**
+     * Brightness at each squared distance from the center, as a fraction
+     * of the squared radius: (1 - sqrt(i / STEPS))^2, in fixed point.
+     */
+    private static final int[] FALLOFF = new int[STEPS + 1];
+    /** Recently built glows, by key, in least recently used order. */
+    private static final LinkedHashMap<Integer, PixelBuffer> CACHE =
+            new LinkedHashMap<Integer, PixelBuffer>(16, 0.75f, true) {
+                /** Unique version of this map. */
+                private static final long serialVersionUID = 
+                        7402519872611023964L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, PixelBuffer> eldest) {
+                    return size() > CACHE_LIMIT;
+                }
+            };
+
+    static {
+        double edge;
+        for (int i = 0; i <= STEPS; i++) {
+            edge = 1 - Math.sqrt((double) i / STEPS);
+            FALLOFF[i] = (int) (edge * edge * (1 << FIXED_BITS));
+        }
+    }
+
+    /**
+     * Static methods only.
+     */
+    private Glow() {
+    }
+
+    /**
+     * Get the glow for a light, building it the first time it is needed.
+     * Safe to call from any thread.
+     * @param radius The radius of the glow in pixels
+     * @param r the red part of the light color, 0:1
+     * @param g the green part of the light color, 0:1
+     * @param b the blue part of the light color, 0:1
+     * @return A (2 * radius) square buffer.  Shared, so don't change it.
+     */
+    public static synchronized PixelBuffer get(int radius, double r,
+                                               double g, double b) {
+        int red = quantize(r);
+        int green = quantize(g);
+        int blue = quantize(b);
+        Integer key = (((radius << COLOR_BITS | red) << COLOR_BITS
+                       | green) << COLOR_BITS) | blue;
+        PixelBuffer glow = CACHE.get(key);
+        if (glow == null) {
+            glow = build(radius, expand(red), expand(green), expand(blue));
+            CACHE.put(key, glow);
+        }
+        return glow;
+    }
+
+    /**
+     * Build a glow without looking in or adding to the cache.
+     * @param radius The radius of the glow in pixels
+     * @param r the red part of the light color, 0:1
+     * @param g the green part of the light color, 0:1
+     * @param b the blue part of the light color, 0:1
+     * @return A new (2 * radius) square buffer.
+     */
+    public static PixelBuffer build(int radius,
+                                    double r, double g, double b) {
+        return build(radius, expand(quantize(r)), expand(quantize(g)),
+                     expand(quantize(b)));
+    }
+
+    /**
+     * Round a color channel down to COLOR_BITS.
+     * @param channel The channel, 0:1
+     * @return The channel, 0:(2^COLOR_BITS - 1)
+     */
+    private static int quantize(double channel) {
+        int value = (int) (channel * Util.B_MAX);
+        return Math.max(0, Math.min(value, Util.B_MAX)) >> COLOR_DROP;
+    }
+
+    /**
+     * Stretch a rounded color channel back out to 0:255, so full
+     * brightness stays full.
+     * @param channel The channel, 0:(2^COLOR_BITS - 1)
+     * @return The channel, 0:255
+     */
+    private static int expand(int channel) {
+        return channel << COLOR_DROP | channel >> (COLOR_BITS - COLOR_DROP);
+    }
+
+    /**
+     * Build a glow.  Only one quarter is worked out; the rest is mirrored.
+     * @param radius The radius in pixels
+     * @param r the red part of the color, 0:255
+     * @param g the green part of the color, 0:255
+     * @param b the blue part of the color, 0:255
+     * @return The glow.
+     */
+    private static PixelBuffer build(int radius, int r, int g, int b) {
+        int size = radius << 1;
+        PixelBuffer pixels = new PixelBuffer(size, size);
+        long radius2 = (long) radius * radius;
+        int dx;
+        int dy;
+        int index;
+        int fade;
+        int color;
+        for (int x = 0, ix = size - 1; x < radius; x++, ix--) {
+            dx = radius - x;
+            for (int y = 0, iy = size - 1; y < radius; y++, iy--) {
+                dy = radius - y;
+                index = (int) Math.min(STEPS,
+                        (dx * dx + dy * dy) * (long) STEPS / radius2);
+                fade = FALLOFF[index];
+                color = OPAQUE
+                      | (fade * r >> FIXED_BITS) << PixelBuffer.R_SHIFT
+                      | (fade * g >> FIXED_BITS) << PixelBuffer.G_SHIFT
+                      | (fade * b >> FIXED_BITS);
+                pixels.set(x,  y,  color);
+                pixels.set(ix, y,  color);
+                pixels.set(x,  iy, color);
+                pixels.set(ix, iy, color);
+            }
+        }
+        return pixels;
+    }
+}
@@ -1,18 +1,22 @@
 /** Joe Pelz, Set A, A00893517 */
 package core.props;
 
+import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.Random;
 
 import core.Drawable;
+import core.PixelBuffer;
 import core.Texture;
 import core.Trigger;
-import core.Util;
 import core.world.Level;
 
 /**
  * <p>Represents a light in the world, at a particular position.</p>
+ * <p>Only used on the game thread.  The renderer copies the lit 
+ * lights' pixels into each snapshot there, so drawing never calls 
+ * in here.</p>
  * @author Joe Pelz, Set A, A00893517
  * @version 1.0
  */
@@ -21,6 +25,8 @@ public class Light implements Trigger, Drawable {
     private static final byte R_SHIFT = 16;
     /** Bit-shift value for green in integer colors. */
     private static final byte G_SHIFT = 8;
+    /** Offset from a pixel's corner to its center. */
+    private static final double HALF = 0.5;
     /** how many milliseconds to wait before allowing retriggering. */
     private static final short COOLDOWN = 500;
 
@@ -41,8 +47,18 @@ public class Light implements Trigger, Drawable {
     private double g;
     /** The blue component of the light color. */
     private double b;
-    /** The pixels for the visual overlay of the light. */
-    private double[][][] pixels;
+    /** The glow drawn around the light, fetched when first drawn. */
+    private PixelBuffer glow;
+    /** The glow with shadows cut out, worked out when first drawn and
+     * again whenever a tile in reach changes.  Never changed once made,
+     * so it can be drawn while the next one is worked out. */
+    private PixelBuffer pixels;
+    /** Scratch: which tiles in reach are solid. */
+    private boolean[] solid;
+    /** Scratch: solid tiles below and left of each tile corner. */
+    private int[] below;
+    /** Scratch: which tiles in reach have nothing solid in the way. */
+    private boolean[] clear;
     
     /** The light radius, default 100. */
     private short lightRadius;
@@ -100,6 +116,7 @@ public class Light implements Trigger, Drawable {
         r = red;
         g = green;
         b = blue;
+        updatePixels();
     }
     
     /**
@@ -150,20 +167,6 @@ public class Light implements Trigger, Drawable {
         return isOn;
     }
     
-    /**
-     * Get the distance between two points.
-     * @param x1 Point 1's x coordinate
-     * @param x2 Point 2's x coordinate
-     * @param y1 Point 1's y coordinate
-     * @param y2 Point 2's y coordinate
-     * @return The distance between the points, as a double.
-     */
-    private double getDistance(int x1, int x2, int y1, int y2) {
-        x1 = x2 - x1;
-        y1 = y2 - y1;
-        return Math.sqrt(x1 * x1 + y1 * y1);
-    }
-
     /**
      * Check if the light's trigger is active.
      * @return true if the trigger is active.
@@ -172,6 +175,13 @@ public class Light implements Trigger, Drawable {
         return isActive;
     }
 
+    @Override
+    public Rectangle getTriggerArea(Rectangle rv) {
+        //the light is triggered by touching its center point
+        rv.setBounds(pos.x, pos.y, 1, 1);
+        return rv;
+    }
+
     @Override
     public boolean isTriggered(Rectangle bbox) {
         boolean result = (
@@ -200,62 +210,216 @@ public class Light implements Trigger, Drawable {
     }
 
     /**
-     * Update the pixel array for the light.
+     * Forget the light's glow, so the right one is fetched next time 
+     * it is drawn.  Glows are shared between lights that look alike 
+     * and only built the first time one is switched on.
      */
     public void updatePixels() {
-        pixels = new double[lightRadius << 1][lightRadius << 1][Util.CHANNELS];
-        //Center of light glow
-        double dR;
-        double dG;
-        double dB;
-        double distance;
-        for (int x = 0, ix = bounds.width - 1; 
-                x < lightRadius; 
-                x++, ix--) {
-            for (int y = 0, iy = bounds.height - 1; 
-                    y < lightRadius; 
-                    y++, iy--) {
-                
-                //Get pixel distance from light source
-                distance = getDistance(x, lightRadius, y, lightRadius);
-                /* Convert distance to 0:1 with 1 at the light 
-                 * and 0 at the perimeter circle. Clamp negatives.*/
-                distance = Math.max(0, 1 - (distance / lightRadius));
-                distance = Math.pow(distance, 2);
+        glow = null;
+        pixels = null;
+    }
 
-                dR = distance * r;
-                dG = distance * g;
-                dB = distance * b;
-                pixels[x][y][Util.R] = dR;
-                pixels[x][y][Util.G] = dG;
-                pixels[x][y][Util.B] = dB;
-                pixels[x][y][Util.A] = 1.0;
-                pixels[ix][y][Util.R] = dR;
-                pixels[ix][y][Util.G] = dG;
-                pixels[ix][y][Util.B] = dB;
-                pixels[ix][y][Util.A] = 1.0;
-                pixels[x][iy][Util.R] = dR;
-                pixels[x][iy][Util.G] = dG;
-                pixels[x][iy][Util.B] = dB;
-                pixels[x][iy][Util.A] = 1.0;
-                pixels[ix][iy][Util.R] = dR;
-                pixels[ix][iy][Util.G] = dG;
-                pixels[ix][iy][Util.B] = dB;
-                pixels[ix][iy][Util.A] = 1.0;
-            }
+    /**
+     * Tell the light that a tile within its reach has become solid or
+     * stopped being solid.  If it has been drawn, its shadows are cast
+     * again now, when the tile changes, rather than in the middle of 
+     * capturing the next frame.
+     */
+    public void updateShadows() {
+        if (pixels != null) {
+            pixels = castShadows(glow);
         }
     }
     
     @Override
-    public double[][][] getPixels() {
+    public PixelBuffer getPixels() {
+        if (pixels == null) {
+            if (glow == null) {
+                glow = Glow.get(lightRadius, r, g, b);
+            }
+            pixels = castShadows(glow);
+        }
         return pixels;
     }
 
+    /**
+     * Cut the shadows of the level's solid tiles out of a glow.  A pixel
+     * stays lit if the line from the light to it crosses no solid tile
+     * before reaching the pixel's own tile, so walls facing the light
+     * are lit and what is behind them is not.
+     * @param lit The glow, unshadowed
+     * @return lit itself if nothing in reach is solid, else a copy with
+     * the shadowed pixels black.
+     */
+    private PixelBuffer castShadows(PixelBuffer lit) {
+        final int cell = Level.CELL_SIZE;
+        //the tiles in reach, relative to the first one
+        int col0 = cellOf(bounds.x);
+        int row0 = cellOf(bounds.y);
+        int cols = cellOf(bounds.x + bounds.width - 1) - col0 + 1;
+        int rows = cellOf(bounds.y + bounds.height - 1) - row0 + 1;
+        int lightCol = (pos.x - col0 * cell) / cell;
+        int lightRow = (pos.y - row0 * cell) / cell;
+        int size = lit.getWidth();
+        int[] src = lit.getData();
+        PixelBuffer result;
+        int[] dst;
+        int color;
+        int i;
+
+        //the scratch arrays only change size with the radius.  below's
+        //first row and column are never written, so they stay 0
+        if (solid == null || solid.length != cols * rows) {
+            solid = new boolean[cols * rows];
+            //solid tiles below and left of each corner, to skip the walk
+            //for tiles with nothing solid between them and the light
+            below = new int[(cols + 1) * (rows + 1)];
+            clear = new boolean[cols * rows];
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                solid[row * cols + col] = 
+                        hLevel.isSolid(col0 + col, row0 + row);
+                below[(row + 1) * (cols + 1) + col + 1] = 
+                        below[row * (cols + 1) + col + 1]
+                      + below[(row + 1) * (cols + 1) + col]
+                      - below[row * (cols + 1) + col]
+                      + (solid[row * cols + col] ? 1 : 0);
+            }
+        }
+        if (below[below.length - 1] == 0) {
+            return lit;
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                clear[row * cols + col] = solidBetween(below, cols, 
+                        lightCol, lightRow, col, row)
+                        - (solid[row * cols + col] ? 1 : 0) == 0;
+            }
+        }
+
+        result = new PixelBuffer(size, size);
+        dst = result.getData();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                i = y * size + x;
+                color = src[i];
+                if ((color & PixelBuffer.RGB_MASK) == 0
+                        || clear[(bounds.y + y - row0 * cell) / cell * cols
+                                 + (bounds.x + x - col0 * cell) / cell]
+                        || isVisible(solid, cols, col0 * cell, row0 * cell,
+                                     bounds.x + x, bounds.y + y)) {
+                    dst[i] = color;
+                } else {
+                    dst[i] = color & PixelBuffer.ALPHA_MASK;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count the solid tiles in the box of tiles that has two tiles at
+     * opposite corners.
+     * @param below Solid tiles below and left of each tile corner
+     * @param cols The number of tiles across
+     * @param col0 The column of the first tile
+     * @param row0 The row of the first tile
+     * @param col1 The column of the second tile
+     * @param row1 The row of the second tile
+     * @return The number of solid tiles.
+     */
+    private static int solidBetween(int[] below, int cols, int col0, 
+                                    int row0, int col1, int row1) {
+        int left = Math.min(col0, col1);
+        int right = Math.max(col0, col1) + 1;
+        int bottom = Math.min(row0, row1);
+        int top = Math.max(row0, row1) + 1;
+        int stride = cols + 1;
+        return below[top * stride + right] - below[bottom * stride + right]
+             - below[top * stride + left] + below[bottom * stride + left];
+    }
+
+    /**
+     * Walk the tiles from the light to a pixel, looking for one that's
+     * solid.  Neither the light's tile nor the pixel's tile count.
+     * @param solid Which tiles in reach are solid, row by row
+     * @param cols The number of tiles across solid
+     * @param left The world x of solid's left edge
+     * @param bottom The world y of solid's bottom edge
+     * @param px The world x of the pixel
+     * @param py The world y of the pixel
+     * @return true if the light reaches the pixel.
+     */
+    private boolean isVisible(boolean[] solid, int cols, int left, 
+                              int bottom, int px, int py) {
+        final int cell = Level.CELL_SIZE;
+        //from the light to the pixel's center, relative to solid
+        double ox = pos.x - left;
+        double oy = pos.y - bottom;
+        double dx = px + HALF - pos.x;
+        double dy = py + HALF - pos.y;
+        int col = (int) (ox / cell);
+        int row = (int) (oy / cell);
+        int endCol = (px - left) / cell;
+        int endRow = (py - bottom) / cell;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        //how far along the line the next column and row edges are
+        double nextX = Double.POSITIVE_INFINITY;
+        double nextY = Double.POSITIVE_INFINITY;
+        double perX = Double.POSITIVE_INFINITY;
+        double perY = Double.POSITIVE_INFINITY;
+        if (dx != 0) {
+            nextX = ((col + (dx > 0 ? 1 : 0)) * cell - ox) / dx;
+            perX = cell / Math.abs(dx);
+        }
+        if (dy != 0) {
+            nextY = ((row + (dy > 0 ? 1 : 0)) * cell - oy) / dy;
+            perY = cell / Math.abs(dy);
+        }
+
+        //only ever step towards the pixel's tile, so rounding can't
+        //walk past it
+        while (col != endCol || row != endRow) {
+            if (row == endRow || (col != endCol && nextX < nextY)) {
+                col += stepX;
+                nextX += perX;
+            } else {
+                row += stepY;
+                nextY += perY;
+            }
+            if ((col != endCol || row != endRow) 
+                    && solid[row * cols + col]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the tile a pixel coordinate is in, rounding down even when
+     * negative.
+     * @param v A pixel coordinate
+     * @return The tile coordinate
+     */
+    private static int cellOf(int v) {
+        if (v >= 0) {
+            return v / Level.CELL_SIZE;
+        }
+        return -((-v - 1) / Level.CELL_SIZE) - 1;
+    }
+
     @Override
     public Rectangle getBounds() {
         return bounds;
     }
 
+    @Override
+    public Rectangle getDrawBounds(double alpha) {
+        return bounds;
+    }
+
     @Override
     public short getDrawType() {
         // TODO Auto-generated method stub
@@ -267,6 +431,12 @@ public class Light implements Trigger, Drawable {
         return isOn;
     }
 
+    @Override
+    public Image getImage() {
+        //lights are only ever added, from getPixels()
+        return null;
+    }
+
     @Override
     public byte[] getData() {
         // TODO Auto-generated method stub
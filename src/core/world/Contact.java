@@ -0,0 +1,24 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.world;
+
+/**
+ * <p>Where a box moving through a Level first touches a solid tile:
+ * filled in by Level.sweep.  Reuse one per thread so that sweeping
+ * doesn't allocate.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class Contact {
+    /** How far through the move the box touches, from 0 to 1. */
+    public double time;
+    /** The x part of the surface normal: -1, 0 or 1. */
+    public int normalX;
+    /** The y part of the surface normal: -1, 0 or 1. */
+    public int normalY;
+    /** The column of the first solid tile touched. */
+    public int col;
+    /** The row of the first solid tile touched. */
+    public int row;
+    /** How many solid tiles the box touches at that time. */
+    public int cells;
+}
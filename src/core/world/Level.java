@@ -4,30 +4,65 @@ package core.world;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
-import core.Drawable;
-import core.Dynamic;
+import core.PixelBuffer;
 import core.Texture;
 import core.TexturePack;
-import core.Util;
 
 /**
  * <p>This class merely stores data about a level. </p>
  * @author Joe Pelz, Set A, A00893517
  * @version 1.0
  */
-public class Level implements Drawable {
+public class Level {
     /** the size of the tiles used. */
     public static final int CELL_SIZE = 30;
     /** The directory levels are stored in. */
     private static final String BASE_PATH = "/levels/";
+    /** Tile flag: bodies can't pass through it. */
+    public static final int SOLID = 0x80;
+    /** Tile flag: something happens when it is touched. */
+    public static final int TRIGGER = 0x40;
+    /** Tile flag: it is a light fitting, lit or not. */
+    public static final int LIGHT = 0x20;
+    /** The bits of a tile code that hold flags. */
+    private static final int FLAG_MASK = SOLID | TRIGGER | LIGHT;
+    /** The bits of a tile code that hold the palette index. */
+    private static final int PALETTE_MASK = ~FLAG_MASK & 0xFF;
+    /** Tile code of a tile not yet read from the level's file. */
+    private static final byte UNLOADED = (byte) 0xFF;
+    /** The textures tiles can be, indexed by palette index. */
+    private static final Texture[] PALETTE = Texture.values();
+    /** The tile code of each texture, indexed by ordinal. */
+    private static final byte[] CODES = new byte[PALETTE.length];
+
+    static {
+        for (Texture tx : PALETTE) {
+            CODES[tx.ordinal()] = (byte) (tx.ordinal() | flagsOf(tx));
+        }
+    }
+
     /** The rows (tiles, not pixels) in this level. */
     private final int rows;
     /** The cols (tiles, not pixels) in this level. */
     private final int cols;
-    /** The array that holds level data. */
-    private Texture[][] map;
+    /** 
+     * The tiles, one byte each, row by row from the bottom. 
+     * Each byte is a palette index in the low bits and flags 
+     * (SOLID, TRIGGER, LIGHT) in the high bits, so collision tests
+     * read one byte.
+     */
+    private byte[] tiles;
+    /** The file tiles are read from as they are needed, or null. */
+    private LevelFile source;
+    /** The unlit light fittings, if known without reading every tile. */
+    private Point[] lights;
+    /** Who to tell when setCell changes a tile. */
+    private ArrayList<TileListener> listeners = 
+            new ArrayList<TileListener>();
     /** Where the player should start. */
     private Point start = new Point(0, 2);
     /** Where the player should exit. */
@@ -35,12 +70,8 @@ public class Level implements Drawable {
     
     /** The texture pack to draw from. Pun intended. */
     private TexturePack tp;
-    /** The actual pixels of the rendering. */
-    private double[][][] pixels;
-    /** The region the pixels cover. */
+    /** The region the level covers. */
     private Rectangle bounds;
-    /** The draw type for this element. */
-    private short drawType;
     
     /**
      * Constructor to initialize a level from a file.
@@ -48,16 +79,22 @@ public class Level implements Drawable {
      * @param tPack The texture pack to use.
      */
     public Level(String path, TexturePack tPack) {
+        this(Level.class.getResourceAsStream(BASE_PATH + path), tPack);
+    }
+
+    /**
+     * Constructor to initialize a level from a text stream.
+     * @param in The level, as text.  Read to the end and closed.
+     * @param tPack The texture pack to use.
+     */
+    public Level(InputStream in, TexturePack tPack) {
         tp = tPack;
-        //Open the file for reading
-        InputStream in = getClass().getResourceAsStream(BASE_PATH + path);
         Scanner scan = new Scanner(in);
         
         //Set the array size
         cols = scan.nextInt();
         rows = scan.nextInt();
-        pixels = new double[cols * CELL_SIZE][rows * CELL_SIZE][Util.CHANNELS];
-        map = new Texture[cols][rows];
+        tiles = new byte[cols * rows];
         char[][] cMap = new char[cols][rows];
         char c = '0';
         scan.nextLine();
@@ -80,7 +117,6 @@ public class Level implements Drawable {
         scan.close();
         
         init(cMap);
-        updatePixels();
     }
 
     /**
@@ -91,27 +127,38 @@ public class Level implements Drawable {
      */
     public Level(int cols, int rows, TexturePack tPack) {
         tp = tPack;
-        pixels = new double[cols * CELL_SIZE][rows * CELL_SIZE][Util.CHANNELS];
         
         this.cols = cols;
         this.rows = rows;
-        map = new Texture[cols][rows];
+        tiles = new byte[cols * rows];
         initEmpty();
         final int defaultStart = rows * CELL_SIZE;
         start = new Point(0, defaultStart);
-        
-        updatePixels();
+    }
+    
+    /**
+     * Constructor for a level whose tiles are read from a level file as
+     * they are first looked at.
+     * @param file The open level file.
+     * @param tPack the TexturePack to use.
+     */
+    Level(LevelFile file, TexturePack tPack) {
+        tp = tPack;
+        source = file;
+        cols = file.getCols();
+        rows = file.getRows();
+        start = file.getStart();
+        exit = file.getExit();
+        lights = file.getLights();
+        tiles = new byte[cols * rows];
+        Arrays.fill(tiles, UNLOADED);
     }
     
     /**
      * Initialize the level to be empty.
      */
     private void initEmpty() {
-        for (int col = 0; col < cols; col++) {
-            for (int row = 0; row < rows; row++) {
-                map[col][row] = Texture.bg;
-            }
-        }
+        Arrays.fill(tiles, CODES[Texture.bg.ordinal()]);
     }
     
     /**
@@ -119,14 +166,14 @@ public class Level implements Drawable {
      * @param data An array representing the blocks to make the world from.
      */
     private void init(char[][] data) {
-        if (data.length != map.length || data[0].length != map[0].length) {
+        if (data.length != cols || data[0].length != rows) {
             throw new IllegalArgumentException("data array "
                     + "does not match level size!");
         }
         
         for (int col = 0; col < cols; col++) {
             for (int row = 0; row < rows; row++) {
-                map[col][row] = translate(data[col][row]);
+                tiles[row * cols + col] = code(translate(data[col][row]));
             }
         }
     }
@@ -158,7 +205,10 @@ public class Level implements Drawable {
     public void pasteLevel(int bottom, int left, Level v) {
         for (int col = left; col < left + v.getCols(); col++) {
             for (int row = bottom; row < bottom + v.getRows(); row++) {
-                map[col][row] = v.getCell(col, row);
+                //load the rest of the chunk first, so loading can't 
+                //undo this
+                tile(col, row);
+                tiles[row * cols + col] = code(v.getCell(col, row));
             }
         }
     }
@@ -186,14 +236,32 @@ public class Level implements Drawable {
      * @param tx the texture to set
      */
     public void setCell(int col, int row, Texture tx) {
+        byte code = code(tx);
+        byte old;
         if (!isInBounds(col, row)) {
             //target (13,4) out of bounds (0:10), (0:50).
             throw new IllegalArgumentException("target (" + row
                     + "," + col + ") out of bounds (0:" + rows
                     + "), (0:" + cols + ".");
         }
-        map[col][row] = tx;
-        updatePixels(col, row);
+        //load the rest of the chunk first, so loading can't undo this
+        old = tile(col, row);
+        tiles[row * cols + col] = code;
+        if (old != code) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).tileChanged(col, row, 
+                        old & FLAG_MASK, code & FLAG_MASK);
+            }
+        }
+    }
+    
+    /**
+     * Ask to be told whenever setCell changes a tile.  
+     * (pasteLevel doesn't tell anyone.)
+     * @param listener Who to tell.
+     */
+    public void addTileListener(TileListener listener) {
+        listeners.add(listener);
     }
     
     /**
@@ -204,12 +272,78 @@ public class Level implements Drawable {
      */
     public Texture getCell(int col, int row) {
         if (isInBounds(col, row)) {
-            return map[col][row];
+            return PALETTE[tile(col, row) & PALETTE_MASK];
         } else {
             return Texture.bg;
         }
     }
 
+    /**
+     * Get the flags of the cell at the given coordinates.
+     * @param col the column to inspect
+     * @param row the row to inspect 
+     * @return SOLID, TRIGGER and LIGHT bits; 0 outside the level.
+     */
+    public int getFlags(int col, int row) {
+        if (isInBounds(col, row)) {
+            return tile(col, row) & FLAG_MASK;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Check if bodies can pass through the cell at the given coordinates.
+     * @param col the column to inspect
+     * @param row the row to inspect 
+     * @return true if the cell is solid.  Outside the level is not.
+     */
+    public boolean isSolid(int col, int row) {
+        return (getFlags(col, row) & SOLID) != 0;
+    }
+
+    /**
+     * Get the code of a tile, first reading its chunk from the level's
+     * file if it hasn't been read yet.
+     * @param col the column, in bounds
+     * @param row the row, in bounds
+     * @return The tile code: palette index and flags.
+     */
+    private byte tile(int col, int row) {
+        byte code = tiles[row * cols + col];
+        if (code == UNLOADED) {
+            source.load(col, row, tiles);
+            code = tiles[row * cols + col];
+        }
+        return code;
+    }
+
+    /**
+     * Get the flags that a texture gives a tile.
+     * @param tx the texture
+     * @return SOLID, TRIGGER and LIGHT bits for that texture.
+     */
+    public static int flagsOf(Texture tx) {
+        switch (tx) {
+        case brick:
+            return SOLID;
+        case bgLight:
+        case bgLightDead:
+            return TRIGGER | LIGHT;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Get the byte stored for a texture: its palette index and flags.
+     * @param tx the texture
+     * @return The tile code.
+     */
+    static byte code(Texture tx) {
+        return CODES[tx.ordinal()];
+    }
+
     /**
      * accessor for columns.
      * @return the number of columns (width) in the level
@@ -246,6 +380,18 @@ public class Level implements Drawable {
         return exit;
     }
 
+    /**
+     * Gets where the unlit light fittings are.  A level opened from a 
+     * level file knows this without reading (and loading) every tile.
+     * @return The bottom left corner of each, in pixels.
+     */
+    public Point[] getLights() {
+        if (lights != null) {
+            return lights;
+        }
+        return getAll(Texture.bgLightDead);
+    }
+
     /**
      * Gets all the bricks that match the given texture.
      * @param tx the texture to match
@@ -259,7 +405,7 @@ public class Level implements Drawable {
         Point[] temp;
         int row = 0;
         int col = 0;
-        byte lightCount = 0;
+        int lightCount = 0;
         
         //while iteration is incomplete
         while (col < cols && row < rows) {
@@ -303,137 +449,225 @@ public class Level implements Drawable {
     }
     
     /**
-     * Update the entire pixel array for the level.
+     * Paint the tiles that overlap a region into a pixel buffer.
+     * Nothing is cached; tiles are copied straight from the texture pack.
+     * @param dest The buffer to paint into.
+     * @param originX The world x coordinate of dest's left edge.
+     * @param originY The world y coordinate of dest's bottom edge.
+     * @param region The world region to paint (clipped to dest and level).
      */
-    private void updatePixels() { 
-        double[][][] iPixels;
+    public void paintTiles(PixelBuffer dest, int originX, int originY, 
+                           Rectangle region) {
+        int left   = Math.max(Math.max(0, originX), region.x);
+        int bottom = Math.max(Math.max(0, originY), region.y);
+        int right  = Math.min(Math.min(cols * CELL_SIZE, 
+                                       originX + dest.getWidth()), 
+                              region.x + region.width);
+        int top    = Math.min(Math.min(rows * CELL_SIZE, 
+                                       originY + dest.getHeight()), 
+                              region.y + region.height);
+        if (left >= right || bottom >= top) {
+            return;
+        }
         
-        //for every block in the world,
-        for (int col = 0; col < cols; col++) {
-            for (int row = 0; row < rows; row++) {
-                //get the pixels for that texture
-                iPixels = tp.getP(map[col][row]);
-                //paste them into the instance data pixels[][][];        
-                for (int x = col * CELL_SIZE; 
-                        x < col * CELL_SIZE + CELL_SIZE; 
-                        x++) {
-                    for (int y = row * CELL_SIZE; 
-                            y < row * CELL_SIZE + CELL_SIZE; 
-                            y++) {
-                        pixels[x][y] = iPixels[x - (col * CELL_SIZE)]
-                                              [(y - (row * CELL_SIZE))];
-                    }
-                }
+        int tileX;
+        int tileY;
+        int x0;
+        int y0;
+        int w;
+        int h;
+        //for every block in the region,
+        for (int col = left / CELL_SIZE; col * CELL_SIZE < right; col++) {
+            tileX = col * CELL_SIZE;
+            for (int row = bottom / CELL_SIZE; 
+                    row * CELL_SIZE < top; 
+                    row++) {
+                tileY = row * CELL_SIZE;
+                //clip the tile to the region
+                x0 = Math.max(tileX, left);
+                y0 = Math.max(tileY, bottom);
+                w = Math.min(tileX + CELL_SIZE, right) - x0;
+                h = Math.min(tileY + CELL_SIZE, top) - y0;
+                dest.copy(tp.getP(PALETTE[tile(col, row) & PALETTE_MASK]), 
+                          x0 - tileX, y0 - tileY, 
+                          x0 - originX, y0 - originY, 
+                          w, h);
             }
         }
     }
-    
+
     /**
-     * update a specific tile of the level's pixel array.
-     * @param col the tile column to update.
-     * @param row the tile row to update.
+     * Get the region covered by the level, in pixels.
+     * @return A rectangle with the level's size, at the origin.
      */
-    private void updatePixels(int col, int row) {
-        double[][][] iPixels;
-
-        //get the pixels for that texture
-        iPixels = tp.getP(map[col][row]);
-        //paste them into the instance data pixels[][][];        
-        for (int x = col * CELL_SIZE; 
-                x < col * CELL_SIZE + CELL_SIZE; 
-                x++) {
-            for (int y = row * CELL_SIZE; 
-                    y < row * CELL_SIZE + CELL_SIZE; 
-                    y++) {
-                pixels[x][y] = iPixels[x - (col * CELL_SIZE)]
-                                      [(y - (row * CELL_SIZE))];
-            }
-        }
-    }
-    
-    @Override
-    public double[][][] getPixels() {
-//        System.out.println("at 15,30: R=" + pixels[15][30][Util.R] 
-//                                 + ", G=" + pixels[15][30][Util.G] 
-//                                 + ", B=" + pixels[15][30][Util.B]);
-        return pixels;
-    }
-
-    @Override
     public Rectangle getBounds() {
         bounds = new Rectangle(0, 0, cols * CELL_SIZE, rows * CELL_SIZE);
         return bounds;
     }
 
-    @Override
-    public short getDrawType() {
-        return drawType;
-    }
-
     /**
-     * Calculate the x-axis movement required for the given object to not 
-     * overlap with the given block coordinate. 
-     * @param obj The entity that has collided
-     * @param velocity The motion of the entity (for reversal. Unused yet.)
-     * @param impactZone The block that has been collided with.
-     * @return The distance to move to no longer be colliding.
-     */
-    public int escapeX(Dynamic obj, double velocity, Point impactZone) {
-        Rectangle r = obj.getCollisionBox();
-        int escape = 0; 
-        //if the obj was moving right nudge it left into safety.
-        if (velocity > 0) {
-            escape = (impactZone.x * CELL_SIZE - r.width) - r.x;
-            
-        //but if the obj was moving left nudge it right into safety.
-        } else if (velocity < 0) {
-            escape = CELL_SIZE - (r.x % CELL_SIZE);
+     * Sweep a box through the level and find the first solid tile it
+     * runs into, so fast movers can't skip over thin walls.
+     * <p>This walks the tile boundaries the box's leading edges cross,
+     * in the order it crosses them (a DDA over tiles), and checks only
+     * the strip of tiles the box enters at each crossing.  The first 
+     * strip with a solid tile gives the time of impact and the normal.
+     * Tiles the box already overlaps at the start are ignored, so a box
+     * stuck in a wall can move out of it.</p>
+     * @param left The left of the box, in pixels
+     * @param bottom The bottom of the box, in pixels
+     * @param width The width of the box
+     * @param height The height of the box
+     * @param dx How far the box moves right
+     * @param dy How far the box moves up
+     * @param mask The tile flags that block the box, e.g. SOLID
+     * @param out Filled in with the contact, if there is one.
+     * @return true if the box hits a solid tile before the end of the move.
+     */
+    public boolean sweep(int left, int bottom, int width, int height,
+                         double dx, double dy, int mask, Contact out) {
+        final double never = Double.POSITIVE_INFINITY;
+        int stepC = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepR = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        //the next column and row the leading edges enter
+        int col;
+        int row;
+        //when they enter them, and how long to cross a whole tile
+        double nextX;
+        double nextY;
+        double deltaX;
+        double deltaY;
+        double t;
+        double edge;
+        int first;
+        int last;
+
+        if (stepC > 0) {
+            col = cellOf(left + width - 1) + 1;
+            nextX = (col * CELL_SIZE - (left + width)) / dx;
+        } else {
+            col = cellOf(left) - 1;
+            nextX = stepC < 0 ? ((col + 1) * CELL_SIZE - left) / dx : never;
+        }
+        if (stepR > 0) {
+            row = cellOf(bottom + height - 1) + 1;
+            nextY = (row * CELL_SIZE - (bottom + height)) / dy;
+        } else {
+            row = cellOf(bottom) - 1;
+            nextY = stepR < 0 ? ((row + 1) * CELL_SIZE - bottom) / dy : never;
         }
+        deltaX = CELL_SIZE / Math.abs(dx);
+        deltaY = CELL_SIZE / Math.abs(dy);
 
-        //Clamp the velocity;
-        if (Math.abs(escape) > Math.abs(velocity)) {
-            escape = 0;
+        //ending exactly against a tile (t == 1) isn't a hit
+        while ((t = Math.min(nextX, nextY)) < 1) {
+            if (nextX == t) {
+                //entering column col: check the rows the box covers
+                edge = bottom + t * dy;
+                first = stepR < 0 ? ceilCell(edge) - 1 : floorCell(edge);
+                last = stepR > 0 ? floorCell(edge + height)
+                                 : ceilCell(edge + height) - 1;
+                if (hitColumn(col, first, last, mask, out)) {
+                    out.time = t;
+                    out.normalX = -stepC;
+                    out.normalY = 0;
+                    return true;
+                }
+            }
+            if (nextY == t) {
+                //entering row row: check the columns the box covers
+                edge = left + t * dx;
+                first = stepC < 0 ? ceilCell(edge) - 1 : floorCell(edge);
+                last = stepC > 0 ? floorCell(edge + width)
+                                 : ceilCell(edge + width) - 1;
+                if (hitRow(row, first, last, mask, out)) {
+                    out.time = t;
+                    out.normalX = 0;
+                    out.normalY = -stepR;
+                    return true;
+                }
+            }
+            if (nextX == t) {
+                col += stepC;
+                nextX += deltaX;
+            }
+            if (nextY == t) {
+                row += stepR;
+                nextY += deltaY;
+            }
         }
-        return escape;
+        return false;
     }
 
     /**
-     * Calculate the y-axis movement required for the given object to not 
-     * overlap with the given block coordinate. 
-     * @param obj The entity that has collided
-     * @param velocity The motion of the entity (for reversal. Unused yet.)
-     * @param impactZone The block that has been collided with.
-     * @return The distance to move to no longer be colliding.
+     * Look for solid tiles in part of a column.
+     * @param col The column
+     * @param first The first row to check
+     * @param last The last row to check
+     * @param mask The tile flags that block
+     * @param out Gets the first tile found and the number found.
+     * @return true if any were solid.
      */
-    public int escapeY(Dynamic obj, double velocity, Point impactZone) {
-        Rectangle r = obj.getCollisionBox();
-        int escape = 0; 
+    private boolean hitColumn(int col, int first, int last,
+                              int mask, Contact out) {
+        out.cells = 0;
+        for (int r = first; r <= last; r++) {
+            if ((getFlags(col, r) & mask) != 0 && out.cells++ == 0) {
+                out.col = col;
+                out.row = r;
+            }
+        }
+        return out.cells > 0;
+    }
 
-        //if the obj was moving up nudge it down into safety.
-        if (velocity > 0) {
-            escape = (impactZone.y * CELL_SIZE - r.height) - r.y;
-            
-        //but if the obj was moving down nudge it up into safety.
-        } else if (velocity < 0) {
-            escape = CELL_SIZE - (r.y % CELL_SIZE);
+    /**
+     * Look for solid tiles in part of a row.
+     * @param row The row
+     * @param first The first column to check
+     * @param last The last column to check
+     * @param mask The tile flags that block
+     * @param out Gets the first tile found and the number found.
+     * @return true if any were solid.
+     */
+    private boolean hitRow(int row, int first, int last,
+                           int mask, Contact out) {
+        out.cells = 0;
+        for (int c = first; c <= last; c++) {
+            if ((getFlags(c, row) & mask) != 0 && out.cells++ == 0) {
+                out.col = c;
+                out.row = row;
+            }
         }
-        
-        //Clamp the velocity;
-        if (Math.abs(escape) > Math.abs(velocity)) {
-            escape = 0;
+        return out.cells > 0;
+    }
+
+    /**
+     * Get the tile a pixel is in, rounding down even when negative.
+     * @param v A pixel coordinate
+     * @return The tile coordinate
+     */
+    private static int cellOf(int v) {
+        if (v >= 0) {
+            return v / CELL_SIZE;
         }
-        return escape;
+        return -((-v - 1) / CELL_SIZE) - 1;
     }
 
-    @Override
-    public boolean isDrawn() {
-        //always draw the level.
-        return true;
+    /**
+     * Get the tile boundary at or below a position.
+     * @param v A position in pixels
+     * @return The tile coordinate, rounded down
+     */
+    private static int floorCell(double v) {
+        return (int) Math.floor(v / CELL_SIZE);
     }
 
-    @Override
-    public byte[] getData() {
-        // TODO Auto-generated method stub
-        return null;
+    /**
+     * Get the tile boundary at or above a position.
+     * @param v A position in pixels
+     * @return The tile coordinate, rounded up
+     */
+    private static int ceilCell(double v) {
+        return (int) Math.ceil(v / CELL_SIZE);
     }
 }
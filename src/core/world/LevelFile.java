@@ -0,0 +1,322 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.world;
+
+import java.awt.Point;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import core.Texture;
+import core.TexturePack;
+
+/**
+ * <p>Reads and writes levels in a binary, chunked format, so that a
+ * large level can be played as soon as it is opened.  The file is
+ * memory-mapped and each chunk of tiles is only copied into the level
+ * the first time something looks at it: usually the renderer, as the
+ * camera comes within a few tiles of it.</p>
+ * <p>The format, all ints big-endian:</p>
+ * <pre>
+ * header:    MAGIC, cols, rows, chunk size (tiles), entity count
+ * entities:  kind, x, y (pixels)        (entity count times)
+ * index:     offset, length             (one per chunk)
+ * chunks:    one byte per tile, the Texture ordinal, row by row
+ *            from the bottom, clipped at the level's edges
+ * </pre>
+ * <p>Chunks are indexed row by row from the bottom left.  Run this
+ * class to convert a text level:
+ * <code>java core.world.LevelFile house.txt house.lvl</code></p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class LevelFile {
+    /** Marks a level file ("LVL1"). */
+    public static final int MAGIC = 0x4C564C31;
+    /** Width and height of a chunk, in tiles. Matches the renderer's. */
+    public static final int CHUNK_TILES = 16;
+    /** Entity kind: where the player starts. */
+    public static final int START = 0;
+    /** Entity kind: where the player exits. */
+    public static final int EXIT = 1;
+    /** Entity kind: an unlit light fitting. */
+    public static final int LIGHT = 2;
+    /** Bytes in the header. */
+    private static final int HEADER_BYTES = 20;
+    /** Bytes in each entity. */
+    private static final int ENTITY_BYTES = 12;
+    /** Bytes in each index entry. */
+    private static final int INDEX_BYTES = 8;
+    /** The textures a tile byte can name, indexed by ordinal. */
+    private static final Texture[] TEXTURES = Texture.values();
+
+    /** The mapped file. */
+    private final ByteBuffer data;
+    /** The columns in the level. */
+    private final int cols;
+    /** The rows in the level. */
+    private final int rows;
+    /** The width and height of a chunk, in tiles. */
+    private final int chunkTiles;
+    /** The number of chunks across the level. */
+    private final int chunkCols;
+    /** Where each chunk's tiles start in the file. */
+    private final int[] offsets;
+    /** Whether each chunk has been copied into the level yet. */
+    private final boolean[] loaded;
+    /** Where the player starts, in pixels. */
+    private Point start = new Point(0, 2);
+    /** Where the player exits, in tiles. */
+    private Point exit = new Point(0, -1);
+    /** The bottom left of each light fitting, in pixels. */
+    private Point[] lights;
+
+    /**
+     * Constructor: reads the header, entities and chunk index.
+     * @param buffer The whole file.
+     * @throws IOException if the file isn't a level file.
+     */
+    private LevelFile(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        int entities;
+        int lightCount = 0;
+        int kind;
+        int x;
+        int y;
+        int chunks;
+
+        data = buffer;
+        if (in.getInt() != MAGIC) {
+            throw new IOException("not a level file");
+        }
+        cols = in.getInt();
+        rows = in.getInt();
+        chunkTiles = in.getInt();
+        entities = in.getInt();
+        chunkCols = (cols + chunkTiles - 1) / chunkTiles;
+        chunks = chunkCols * ((rows + chunkTiles - 1) / chunkTiles);
+
+        lights = new Point[entities];
+        for (int i = 0; i < entities; i++) {
+            kind = in.getInt();
+            x = in.getInt();
+            y = in.getInt();
+            if (kind == START) {
+                start = new Point(x, y);
+            } else if (kind == EXIT) {
+                exit = new Point(x / Level.CELL_SIZE, y / Level.CELL_SIZE);
+            } else if (kind == LIGHT) {
+                lights[lightCount++] = new Point(x, y);
+            }
+        }
+        lights = Arrays.copyOf(lights, lightCount);
+
+        offsets = new int[chunks];
+        loaded = new boolean[chunks];
+        for (int i = 0; i < chunks; i++) {
+            offsets[i] = in.getInt();
+            //the length; every chunk is stored whole, so it's implied
+            in.getInt();
+        }
+    }
+
+    /**
+     * Open a level file.  Only the header, entities and chunk index are
+     * read now; tiles are read as they are needed.
+     * @param file The level file.
+     * @param tPack The texture pack the level draws with.
+     * @return The level.
+     * @throws IOException if the file can't be mapped or isn't a level.
+     */
+    public static Level open(File file, TexturePack tPack)
+        throws IOException {
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ);
+        try {
+            //the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        return new Level(new LevelFile(buffer), tPack);
+    }
+
+    /**
+     * Copy the chunk holding a tile into the level's tiles, if it
+     * hasn't been already.  Safe to call from any thread.
+     * @param col The column of the tile
+     * @param row The row of the tile
+     * @param tiles The level's tiles, row by row from the bottom.
+     */
+    synchronized void load(int col, int row, byte[] tiles) {
+        int chunkCol = col / chunkTiles;
+        int chunkRow = row / chunkTiles;
+        int chunk = chunkRow * chunkCols + chunkCol;
+        int col0 = chunkCol * chunkTiles;
+        int row0 = chunkRow * chunkTiles;
+        int width = Math.min(chunkTiles, cols - col0);
+        int height = Math.min(chunkTiles, rows - row0);
+        int pos = offsets[chunk];
+        int ordinal;
+
+        if (loaded[chunk]) {
+            return;
+        }
+        for (int r = row0; r < row0 + height; r++) {
+            for (int c = col0; c < col0 + width; c++) {
+                ordinal = data.get(pos++);
+                if (ordinal < 0 || ordinal >= TEXTURES.length) {
+                    throw new IllegalStateException("bad tile " + ordinal
+                            + " at (" + c + "," + r + ")");
+                }
+                tiles[r * cols + c] = Level.code(TEXTURES[ordinal]);
+            }
+        }
+        loaded[chunk] = true;
+    }
+
+    /**
+     * Write a level in this format.
+     * @param level The level to write.  Every tile is read.
+     * @param out Where to write it.  Not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void write(Level level, OutputStream out)
+        throws IOException {
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(out));
+        int cols = level.getCols();
+        int rows = level.getRows();
+        int chunkCols = (cols + CHUNK_TILES - 1) / CHUNK_TILES;
+        int chunkRows = (rows + CHUNK_TILES - 1) / CHUNK_TILES;
+        Point[] lights = level.getLights();
+        int offset;
+        int col0;
+        int row0;
+        int length;
+
+        dos.writeInt(MAGIC);
+        dos.writeInt(cols);
+        dos.writeInt(rows);
+        dos.writeInt(CHUNK_TILES);
+        dos.writeInt(2 + lights.length);
+
+        dos.writeInt(START);
+        dos.writeInt(level.getStart().x);
+        dos.writeInt(level.getStart().y);
+        dos.writeInt(EXIT);
+        dos.writeInt(level.getExit().x * Level.CELL_SIZE);
+        dos.writeInt(level.getExit().y * Level.CELL_SIZE);
+        for (Point light : lights) {
+            dos.writeInt(LIGHT);
+            dos.writeInt(light.x);
+            dos.writeInt(light.y);
+        }
+
+        //the index: chunks follow it in the same order, back to back
+        offset = HEADER_BYTES + (2 + lights.length) * ENTITY_BYTES
+               + chunkCols * chunkRows * INDEX_BYTES;
+        for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+            for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                length = Math.min(CHUNK_TILES, cols - chunkCol * CHUNK_TILES)
+                       * Math.min(CHUNK_TILES, rows - chunkRow * CHUNK_TILES);
+                dos.writeInt(offset);
+                dos.writeInt(length);
+                offset += length;
+            }
+        }
+
+        for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+            row0 = chunkRow * CHUNK_TILES;
+            for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                col0 = chunkCol * CHUNK_TILES;
+                for (int r = row0; r < Math.min(row0 + CHUNK_TILES, rows);
+                        r++) {
+                    for (int c = col0;
+                            c < Math.min(col0 + CHUNK_TILES, cols); c++) {
+                        dos.writeByte(level.getCell(c, r).ordinal());
+                    }
+                }
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * Convert a text level to a level file.
+     * @param args The text level to read and the level file to write.
+     * @throws IOException if either file can't be used.
+     */
+    public static void main(String[] args) throws IOException {
+        InputStream in;
+        OutputStream out;
+        Level level;
+
+        if (args.length != 2) {
+            System.err.println("usage: LevelFile in.txt out.lvl");
+            return;
+        }
+        in = new FileInputStream(args[0]);
+        try {
+            level = new Level(in, null);
+        } finally {
+            in.close();
+        }
+        out = new FileOutputStream(args[1]);
+        try {
+            write(level, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * accessor for columns.
+     * @return the number of columns (width) in the level
+     */
+    int getCols() {
+        return cols;
+    }
+
+    /**
+     * accessor for rows.
+     * @return the number of rows (height) in the level
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * accessor for start location.
+     * @return The point to start at, in pixels
+     */
+    Point getStart() {
+        return start;
+    }
+
+    /**
+     * accessor for exit location.
+     * @return The point where the player exits the level, in tiles
+     */
+    Point getExit() {
+        return exit;
+    }
+
+    /**
+     * accessor for the light fittings.
+     * @return The bottom left of each unlit light fitting, in pixels
+     */
+    Point[] getLights() {
+        return lights;
+    }
+}
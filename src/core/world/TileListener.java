@@ -0,0 +1,18 @@
+/** Joe Pelz, Set A, A00893517 */
+package core.world;
+
+/**
+ * <p>Gets told when a tile of a Level changes.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public interface TileListener {
+    /**
+     * Called after a tile of the level is set to a different texture.
+     * @param col The column of the tile
+     * @param row The row of the tile
+     * @param oldFlags The tile's flags before (SOLID, TRIGGER, LIGHT)
+     * @param newFlags The tile's flags now
+     */
+    void tileChanged(int col, int row, int oldFlags, int newFlags);
+}
@@ -0,0 +1,160 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import core.props.Light;
+import core.world.Level;
+
+/**
+ * <p>Checks that the kernels run in bands give the same pixels, bit
+ * for bit, whether or not big regions are split across threads.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class BandsTest {
+    /** Threads to split over, even on a machine with one core. */
+    private static final int THREADS = 4;
+    /** Level width in tiles. */
+    private static final int COLS = 60;
+    /** Level height in tiles. */
+    private static final int ROWS = 40;
+    /** Chance of each tile being a brick. */
+    private static final double BRICKS = 0.3;
+    /** Chance of each other tile holding a light. */
+    private static final double LIGHTS = 0.1;
+    /** Smallest light radius. */
+    private static final int RADIUS = 60;
+    /** Different light radii, RADIUS_STEP apart. */
+    private static final int RADII = 7;
+    /** Difference between light radii. */
+    private static final int RADIUS_STEP = 10;
+    /** Width of the view drawn; several chunks. */
+    private static final int VIEW_W = 1200;
+    /** Height of the view drawn; several chunks. */
+    private static final int VIEW_H = 900;
+    /** Where the view starts in the level. */
+    private static final int CAM = 100;
+    /** From a tile's corner to its center. */
+    private static final int HALF_CELL = Level.CELL_SIZE / 2;
+    /** Every channel of a pixel, for random colors. */
+    private static final int ARGB = 0xFFFFFFFF;
+
+    /** The pool before the test, put back after it. */
+    private ForkJoinPool before;
+    /** The pool the test splits over. */
+    private ForkJoinPool threads = new ForkJoinPool(THREADS);
+
+    /**
+     * Put back the pool the test replaced.
+     */
+    @After
+    public void restorePool() {
+        if (before != null) {
+            Bands.setPool(before);
+        }
+        threads.shutdown();
+    }
+
+    /**
+     * Compositing and converting a view of many chunks, with static
+     * props, gives the same screen split or not.
+     */
+    @Test
+    public void drawMatches() {
+        int[] serial;
+        int[] split;
+
+        assertTrue(Renderer.CHUNK_SIZE * Renderer.CHUNK_SIZE
+                   > Bands.SERIAL_PIXELS);
+        before = Bands.setPool(null);
+        serial = draw();
+        Bands.setPool(threads);
+        split = draw();
+        assertArrayEquals(serial, split);
+    }
+
+    /**
+     * Converting a big buffer gives the same image split or not, both
+     * for images written directly and for ones written through setRGB.
+     */
+    @Test
+    public void pixelsToImageMatches() {
+        Random gen = new Random(1);
+        PixelBuffer pixels = new PixelBuffer(VIEW_W, VIEW_H);
+        int[] data = pixels.getData();
+        Rectangle region = new Rectangle(1, 1, VIEW_W - 2, VIEW_H - 2);
+        int[] types = {BufferedImage.TYPE_INT_ARGB,
+                       BufferedImage.TYPE_INT_RGB};
+        BufferedImage serial;
+        BufferedImage split;
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = gen.nextInt() & ARGB;
+        }
+        before = Bands.setPool(null);
+        for (int type : types) {
+            serial = new BufferedImage(VIEW_W, VIEW_H, type);
+            split = new BufferedImage(VIEW_W, VIEW_H, type);
+            Bands.setPool(null);
+            Util.pixelsToImage(pixels, serial, region);
+            Bands.setPool(threads);
+            Util.pixelsToImage(pixels, split, region);
+            assertArrayEquals(serial.getRGB(0, 0, VIEW_W, VIEW_H,
+                                            null, 0, VIEW_W),
+                              split.getRGB(0, 0, VIEW_W, VIEW_H,
+                                           null, 0, VIEW_W));
+        }
+    }
+
+    /**
+     * Draw a level with lights for static props, from scratch.
+     * @return the screen's pixels.
+     */
+    private static int[] draw() {
+        Random gen = new Random(1);
+        Level level = new Level(COLS, ROWS, new TexturePack("/images/"));
+        Renderer renderer = new Renderer();
+        Canvas comp = new Canvas();
+        BufferedImage out = new BufferedImage(VIEW_W, VIEW_H,
+                                              BufferedImage.TYPE_INT_RGB);
+        Graphics g = out.getGraphics();
+        double roll;
+        Light light;
+        int k = 0;
+
+        for (int col = 0; col < COLS; col++) {
+            for (int row = 0; row < ROWS; row++) {
+                roll = gen.nextDouble();
+                level.setCell(col, row, roll < BRICKS ? Texture.brick
+                        : roll < BRICKS + LIGHTS ? Texture.bgLightDead
+                        : Texture.bg);
+            }
+        }
+        renderer.setWorld(level);
+        for (Point p : level.getAll(Texture.bgLightDead)) {
+            light = new Light(p.x + HALF_CELL, p.y + HALF_CELL, level);
+            light.setColor(gen.nextDouble(), gen.nextDouble(),
+                           gen.nextDouble());
+            light.setRadius((short) (RADIUS + (k++ % RADII) * RADIUS_STEP));
+            light.triggerAction();
+            renderer.addStaticProp(light);
+        }
+        comp.setSize(VIEW_W, VIEW_H);
+        renderer.draw(g, comp, CAM, CAM);
+        g.dispose();
+        return out.getRGB(0, 0, VIEW_W, VIEW_H, null, 0, VIEW_W);
+    }
+}
@@ -0,0 +1,121 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.creatures.Hero;
+import core.world.Level;
+
+/**
+ * <p>Checks that splitting a physics step across the pool moves every
+ * body exactly as stepping them one after another does.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class ParallelStepTest {
+    /** Bodies in each world; enough to step in parallel. */
+    private static final int BODIES = 1024;
+    /** Steps to compare: five seconds of game time. */
+    private static final int STEPS = 600;
+    /** Length of one physics step (120 Hz). */
+    private static final long TICK = 1000000000L / 120;
+    /** Level width in tiles. */
+    private static final int COLS = 200;
+    /** Level height in tiles. */
+    private static final int ROWS = 15;
+    /** Chance of each tile above the floor being a brick. */
+    private static final double BRICKS = 0.15;
+    /** Size of each body. */
+    private static final int SIZE = 30;
+    /** Gravity in both worlds. */
+    private static final double GRAVITY = -1200;
+    /** Fastest starting speed of a body, either way, in pixels/s. */
+    private static final int SPEED = 600;
+    /** How often each body is pushed, in steps. */
+    private static final int PUSH_EVERY = 30;
+    /** How hard each body is pushed. */
+    private static final double PUSH = 20000;
+
+    /**
+     * The parallel step leaves every body where the serial step does,
+     * and on the ground if and only if the serial step does.
+     */
+    @Test
+    public void parallelMatchesSerial() {
+        Level level = makeLevel();
+        PhysicsWorld serial = makeWorld(level, false);
+        PhysicsWorld parallel = makeWorld(level, true);
+        Random pushes = new Random(2);
+        double x;
+        double y;
+
+        for (int s = 0; s < STEPS; s++) {
+            if (s % PUSH_EVERY == 0) {
+                for (int i = 0; i < BODIES; i++) {
+                    x = (pushes.nextDouble() * 2 - 1) * PUSH;
+                    y = pushes.nextDouble() * PUSH;
+                    serial.addForce(i, x, y);
+                    parallel.addForce(i, x, y);
+                }
+            }
+            serial.step(TICK);
+            parallel.step(TICK);
+        }
+        for (int i = 0; i < BODIES; i++) {
+            assertEquals("position of body " + i,
+                         serial.getBody(i).getPos(),
+                         parallel.getBody(i).getPos());
+            assertEquals("onGround of body " + i,
+                         serial.isOnGround(i), parallel.isOnGround(i));
+        }
+    }
+
+    /**
+     * Make a level with a floor and bricks scattered above it.
+     * @return the level, the same every time.
+     */
+    private static Level makeLevel() {
+        Random gen = new Random(1);
+        Level level = new Level(COLS, ROWS, null);
+        for (int col = 0; col < COLS; col++) {
+            level.setCell(col, 0, Texture.brick);
+            for (int row = 2; row < ROWS - 2; row++) {
+                if (gen.nextDouble() < BRICKS) {
+                    level.setCell(col, row, Texture.brick);
+                }
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Make a world of bodies falling into a level, at the same places
+     * and speeds every time.
+     * @param level The level the bodies collide with
+     * @param split Whether to step the world in parallel
+     * @return the world.
+     */
+    private static PhysicsWorld makeWorld(Level level, boolean split) {
+        Random gen = new Random(1);
+        PhysicsWorld physics = new PhysicsWorld(level);
+        Hero body;
+        int i;
+
+        physics.setGravity(0, GRAVITY);
+        physics.setParallel(split);
+        for (int b = 0; b < BODIES; b++) {
+            body = new Hero();
+            body.setSize(SIZE, SIZE);
+            body.setPos(gen.nextInt(COLS * Level.CELL_SIZE),
+                        (ROWS - 1) * Level.CELL_SIZE);
+            i = physics.add(body);
+            physics.setVel(i, gen.nextInt(SPEED * 2) - SPEED,
+                           gen.nextInt(SPEED * 2) - SPEED);
+        }
+        return physics;
+    }
+}
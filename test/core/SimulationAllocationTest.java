@@ -0,0 +1,128 @@
+/** Joe Pelz, Set A, A00893517 */
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.creatures.Hero;
+import core.world.Level;
+
+/**
+ * <p>Checks that stepping the simulation allocates nothing once the JIT
+ * has warmed up, so the game never pauses to collect garbage.</p>
+ * @author Joe Pelz, Set A, A00893517
+ * @version 1.0
+ */
+public class SimulationAllocationTest {
+    /** Sessions counted after warm up. */
+    private static final int SESSIONS = 50;
+    /** The most steps in each session: ten seconds of game time. */
+    private static final int STEPS = 1200;
+    /** Length of one physics step (120 Hz). */
+    private static final long TICK = 1000000000L / 120;
+    /** Bodies in the physics world; enough to step in parallel. */
+    private static final int BODIES = 1024;
+    /** Physics steps to run before counting, long enough for every
+     * body to land. */
+    private static final int PHYSICS_WARMUP = 5000;
+    /** Level width in tiles, for the physics world. */
+    private static final int COLS = 1000;
+    /** Level height in tiles, for the physics world. */
+    private static final int ROWS = 15;
+    /** Size of each body. */
+    private static final int SIZE = 30;
+    /** Gravity in the physics world. */
+    private static final double GRAVITY = -1200;
+
+    /**
+     * Skip the tests if the JVM doesn't count allocated bytes.
+     */
+    @Before
+    public void checkCounter() {
+        assumeTrue(Headless.allocatedBytes() >= 0);
+    }
+
+    /**
+     * Stepping a session allocates nothing.
+     */
+    @Test
+    public void stepAllocatesNothing() {
+        long allocated = 0;
+        long bytes;
+        Simulation sim;
+
+        for (int i = 0; i < Headless.WARMUP; i++) {
+            Headless.play(Headless.newSession(i), STEPS);
+        }
+        for (int i = 0; i < SESSIONS; i++) {
+            //building the level allocates, so only count the stepping
+            sim = Headless.newSession(i);
+            bytes = Headless.allocatedBytes();
+            Headless.play(sim, STEPS);
+            allocated += Headless.allocatedBytes() - bytes;
+        }
+        assertEquals("bytes allocated by step", 0, allocated);
+    }
+
+    /**
+     * Stepping a world big enough to be split across the pool allocates
+     * nothing, on this thread or the pool's.  The bodies are left to
+     * land first: the grid's buckets grow as bodies pile up in new
+     * places, which is a one-off cost, not a per step one.
+     */
+    @Test
+    public void parallelStepAllocatesNothing() {
+        Random gen = new Random(1);
+        Level level = new Level(COLS, ROWS, null);
+        PhysicsWorld physics = new PhysicsWorld(level);
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        Thread[] all;
+        long[] before;
+        long allocated = 0;
+        Hero body;
+
+        //a floor, so no body falls out of the world forever
+        for (int col = 0; col < COLS; col++) {
+            level.setCell(col, 0, Texture.brick);
+        }
+        physics.setGravity(0, GRAVITY);
+        physics.setParallel(true);
+        for (int i = 0; i < BODIES; i++) {
+            body = new Hero();
+            body.setSize(SIZE, SIZE);
+            body.setPos(gen.nextInt(COLS * Level.CELL_SIZE),
+                        (ROWS - 2) * Level.CELL_SIZE);
+            physics.add(body);
+        }
+        for (int s = 0; s < PHYSICS_WARMUP; s++) {
+            physics.step(TICK);
+        }
+
+        //the pool's workers exist now; count them and this thread
+        all = new Thread[Thread.activeCount() * 2];
+        threads.add(Thread.currentThread());
+        for (int i = Thread.enumerate(all) - 1; i >= 0; i--) {
+            if (all[i] instanceof ForkJoinWorkerThread) {
+                threads.add(all[i]);
+            }
+        }
+        before = new long[threads.size()];
+        for (int t = 0; t < before.length; t++) {
+            before[t] = Headless.allocatedBytes(threads.get(t));
+        }
+        for (int s = 0; s < STEPS; s++) {
+            physics.step(TICK);
+        }
+        for (int t = 0; t < before.length; t++) {
+            allocated += Headless.allocatedBytes(threads.get(t)) - before[t];
+        }
+        assertEquals("bytes allocated by parallel step", 0, allocated);
+    }
+}